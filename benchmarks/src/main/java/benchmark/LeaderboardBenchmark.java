@@ -0,0 +1,92 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.AVLPlayerNode;
+import main.Player;
+import main.ScoreKeeper;
+
+/**
+ * Single operations on a prebuilt ELO tree. Queries cycle through a fixed,
+ * randomly drawn set of existing scores so that the cost of picking a query
+ * stays out of the measurement. insertThenDelete puts a fresh player in and
+ * takes it out again, which keeps the tree at its nominal size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms12g", "-Xmx12g" })
+public class LeaderboardBenchmark {
+    private static final int QUERIES = 1 << 16;
+
+    @Param({ "1000", "100000", "1000000", "10000000" })
+    public int players;
+
+    @Param({ Workloads.UNIFORM, Workloads.SKEWED, Workloads.DUPLICATE })
+    public String distribution;
+
+    private AVLPlayerNode eloTree;
+    private double[] queries;
+    private Player[] newcomers;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Player[] start = Workloads.players(players, distribution, 42);
+        eloTree = ScoreKeeper.getTree(start, true);
+        SplittableRandom random = new SplittableRandom(7);
+        queries = new double[QUERIES];
+        newcomers = new Player[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = start[random.nextInt(players)].getELO();
+            newcomers[i] = new Player("new" + i, players + i, Workloads.elo(random, distribution));
+        }
+    }
+
+    private int nextQuery() {
+        return next++ & (QUERIES - 1);
+    }
+
+    @Benchmark
+    public int getRank() {
+        return eloTree.getRank(queries[nextQuery()]);
+    }
+
+    @Benchmark
+    public Player getPlayer() {
+        return eloTree.getPlayer(queries[nextQuery()]);
+    }
+
+    @Benchmark
+    public Player selectByRank() {
+        return eloTree.selectByRank(1 + (nextQuery() % players));
+    }
+
+    @Benchmark
+    public AVLPlayerNode insertThenDelete() {
+        Player p = newcomers[nextQuery()];
+        eloTree = eloTree.insert(p, p.getELO());
+        eloTree = eloTree.delete(p, p.getELO());
+        return eloTree;
+    }
+
+    @Benchmark
+    public String scoreboardPage() {
+        return eloTree.scoreboard(nextQuery() % players, 50);
+    }
+}
@@ -0,0 +1,84 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.AVLPlayerNode;
+import main.Player;
+import main.ScoreKeeper;
+
+/**
+ * A stream of rank lookups interleaved with recorded matches, the way the
+ * ScoreKeeper driver loop sees them. A write plays one match between two
+ * random players and moves both in the tree with updateScore, as the 'M'
+ * command does. The mix of reads and writes is fixed up front from
+ * readPercent, so every run replays the same sequence.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms12g", "-Xmx12g" })
+public class MixedWorkloadBenchmark {
+    private static final int OPS = 1 << 16;
+
+    @Param({ "1000", "100000", "1000000", "10000000" })
+    public int players;
+
+    @Param({ Workloads.UNIFORM, Workloads.SKEWED, Workloads.DUPLICATE })
+    public String distribution;
+
+    @Param({ "50", "90", "99" })
+    public int readPercent;
+
+    private Player[] start;
+    private AVLPlayerNode eloTree;
+    private boolean[] isRead;
+    private int[] first;
+    private int[] second;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        start = Workloads.players(players, distribution, 42);
+        eloTree = ScoreKeeper.getTree(start, true);
+        SplittableRandom random = new SplittableRandom(7);
+        isRead = new boolean[OPS];
+        first = new int[OPS];
+        second = new int[OPS];
+        for (int i = 0; i < OPS; i++) {
+            isRead[i] = random.nextInt(100) < readPercent;
+            first[i] = random.nextInt(players);
+            second[i] = (first[i] + 1 + random.nextInt(players - 1)) % players;
+        }
+    }
+
+    @Benchmark
+    public int operation() {
+        int i = next++ & (OPS - 1);
+        Player a = start[first[i]];
+        if (isRead[i]) {
+            return eloTree.getRank(a.getELO());
+        }
+        Player b = start[second[i]];
+        double oldA = a.getELO();
+        double oldB = b.getELO();
+        a.logVictory(b);
+        eloTree = eloTree.updateScore(a, oldA, a.getELO());
+        eloTree = eloTree.updateScore(b, oldB, b.getELO());
+        return 0;
+    }
+}
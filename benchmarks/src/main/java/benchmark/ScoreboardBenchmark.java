@@ -0,0 +1,58 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.AVLPlayerNode;
+import main.Player;
+import main.ScoreKeeper;
+
+/**
+ * Whole-leaderboard operations: rendering the full scoreboard and building the
+ * tree from an unsorted array with ScoreKeeper.getTree. Each call takes from
+ * microseconds to seconds depending on the size, so these report average time
+ * per call rather than throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms12g", "-Xmx12g" })
+public class ScoreboardBenchmark {
+    @Param({ "1000", "100000", "1000000", "10000000" })
+    public int players;
+
+    @Param({ Workloads.UNIFORM, Workloads.SKEWED, Workloads.DUPLICATE })
+    public String distribution;
+
+    private Player[] start;
+    private AVLPlayerNode eloTree;
+
+    @Setup
+    public void setUp() {
+        start = Workloads.players(players, distribution, 42);
+        eloTree = ScoreKeeper.getTree(start, true);
+    }
+
+    @Benchmark
+    public String scoreboard() {
+        return eloTree.scoreboard();
+    }
+
+    @Benchmark
+    public AVLPlayerNode getTree() {
+        return ScoreKeeper.getTree(start, true);
+    }
+}
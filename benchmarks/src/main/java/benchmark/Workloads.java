@@ -0,0 +1,54 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+
+import main.Player;
+
+/**
+ * Generates the starting players for the benchmarks. Every distribution is
+ * seeded, so each fork and each run sees the same leaderboard.
+ */
+public final class Workloads {
+    /** ELOs spread evenly over [0, 3000). */
+    public static final String UNIFORM = "uniform";
+    /** Most players bunched just above 1000, with a long exponential tail. */
+    public static final String SKEWED = "skewed";
+    /** Only 64 distinct ELOs, so every score is shared by many players. */
+    public static final String DUPLICATE = "duplicate";
+
+    private static final int DISTINCT_DUPLICATES = 64;
+
+    private Workloads() {
+    }
+
+    /**
+     * @param n            The number of players.
+     * @param distribution UNIFORM, SKEWED or DUPLICATE.
+     * @param seed         The random seed.
+     * @return n players with IDs 0 to n - 1.
+     */
+    public static Player[] players(int n, String distribution, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Player[] players = new Player[n];
+        for (int i = 0; i < n; i++) {
+            players[i] = new Player("p" + i, i, elo(random, distribution));
+        }
+        return players;
+    }
+
+    /**
+     * Draws one ELO from the distribution.
+     */
+    public static double elo(SplittableRandom random, String distribution) {
+        switch (distribution) {
+        case UNIFORM:
+            return random.nextDouble() * 3000.0;
+        case SKEWED:
+            return 1000.0 - 250.0 * Math.log(1.0 - random.nextDouble());
+        case DUPLICATE:
+            return 1000.0 + 10.0 * random.nextInt(DISTINCT_DUPLICATES);
+        default:
+            throw new IllegalArgumentException("unknown distribution " + distribution);
+        }
+    }
+}
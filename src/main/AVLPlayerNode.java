@@ -1,5 +1,19 @@
 package main;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
 /**
  * Your code goes in this file
  * fill in the empty methods to allow for the required
@@ -7,7 +21,17 @@ package main;
  * to help in your implementations.
  */
 
-public class AVLPlayerNode {
+public class AVLPlayerNode implements Leaderboard {
+    /**
+     * No AVL tree with fewer than 2^31 nodes is this tall. Read-only descents
+     * give up after this many steps, so a reader that races a writer (see
+     * ConcurrentLeaderboard) always terminates instead of chasing a link cycle
+     * left half-made by a rotation.
+     */
+    private static final int MAX_HEIGHT = 64;
+    // below this many distinct keys a rank query range is not split further
+    private static final int PARALLEL_RANK_QUERIES = 1 << 12;
+
     private Player data;
     private double value;
     private AVLPlayerNode parent;
@@ -15,6 +39,7 @@ public class AVLPlayerNode {
     private AVLPlayerNode rightChild;
     private int rightWeight;
     private int balanceFactor;
+    private int height;
 
 
     public AVLPlayerNode(Player data, double value) {
@@ -25,6 +50,44 @@ public class AVLPlayerNode {
         this.rightChild = null;
         this.rightWeight = 0;
         this.balanceFactor = 0;
+        this.height = 0;
+    }
+
+    /**
+     * Builds a perfectly balanced AVL tree from players that are already sorted
+     * by value. Each subtree is rooted at the middle element of its range, so the
+     * tree is built bottom-up in linear time with no rotations, and the heights,
+     * balance factors and right weights are filled in as it goes. The players
+     * must be in the order the tree keeps them in, see compareKey.
+     *
+     * @param players The players, in increasing order of value and, among
+     *                players that share a value, in decreasing order of ID.
+     * @param values  The value of each player, in the same order.
+     * @return The root of the new tree, or null if there are no players.
+     */
+    public static AVLPlayerNode fromSorted(Player[] players, double[] values) {
+        if (players.length != values.length) {
+            throw new IllegalArgumentException("players and values differ in length");
+        }
+        return buildSorted(players, values, 0, players.length, null);
+    }
+
+    /**
+     * Builds the balanced subtree over the half-open range [from, to).
+     */
+    private static AVLPlayerNode buildSorted(Player[] players, double[] values, int from, int to,
+            AVLPlayerNode parent) {
+        if (from >= to) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        AVLPlayerNode node = new AVLPlayerNode(players[mid], values[mid]);
+        node.parent = parent;
+        node.leftChild = buildSorted(players, values, from, mid, node);
+        node.rightChild = buildSorted(players, values, mid + 1, to, node);
+        node.rightWeight = mid - from;
+        node.updateBalanceFactor();
+        return node;
     }
 
     /**
@@ -41,13 +104,49 @@ public class AVLPlayerNode {
      *         current root is returned.
      */
     public AVLPlayerNode insert(Player newGuy, double value) {
-        AVLPlayerNode z = new AVLPlayerNode(newGuy, value);
+        long start = TreeMetrics.start();
+        AVLPlayerNode root = insertNode(new AVLPlayerNode(newGuy, value));
+        TreeMetrics.INSERT.stop(start);
+        return root;
+    }
+
+    /**
+     * Compares a (value, player ID) key with the key of this node. Nodes are
+     * ordered by value and, among players that share a value, by decreasing ID,
+     * so the lowest ID comes first on the scoreboard. A specific player can then
+     * be found with a single descent however many players share its value.
+     *
+     * @param value The value of the key.
+     * @param id    The player ID of the key.
+     * @return A negative number, zero or a positive number as the key sorts
+     *         before, with or after this node.
+     */
+    private int compareKey(double value, int id) {
+        if (value < this.value) {
+            return -1;
+        } else if (value > this.value) {
+            return 1;
+        }
+        return Integer.compare(this.data.getID(), id);
+    }
+
+    /**
+     * Links a detached node into the tree rooted at this node and rebalances.
+     * Shared by insert and updateScore, which reuses the node it moves.
+     *
+     * @param z The detached node to link in.
+     * @return The root of the AVL tree after insertion.
+     */
+    private AVLPlayerNode insertNode(AVLPlayerNode z) {
         AVLPlayerNode v = null;
         AVLPlayerNode root = this;
+        int id = z.data.getID();
+        int steps = 0;
 
         while (root != null) {
+            steps++;
             v = root;
-            if (z.value < root.value) {
+            if (root.compareKey(z.value, id) < 0) {
                 root.rightWeight++;
                 root = root.leftChild;
             } else {
@@ -55,39 +154,60 @@ public class AVLPlayerNode {
             }
 
         }
+        TreeMetrics.recordPath(steps);
         z.parent = v;
 
         if (v == null) {
             return z;
-        } else if (z.value < v.value) {
+        } else if (v.compareKey(z.value, id) < 0) {
             v.leftChild = z;
         } else {
             v.rightChild = z;
         }
-        rebalanceTree(z);
+        rebalanceTree(v);
         return this.getRoot();
     }
 
+    /**
+     * Walks from the given node up towards the root, refreshing the cached
+     * heights and rotating wherever a node has become unbalanced. The walk stops
+     * early once a subtree comes out with the same height it had before, since
+     * nothing above it can have changed.
+     *
+     * @param node The lowest node whose subtree may have changed height.
+     */
     private void rebalanceTree(AVLPlayerNode node) {
         while (node != null) {
+            int oldHeight = node.height;
             node.updateBalanceFactor();
 
             if (node.balanceFactor < -1) {
                 if (height(node.rightChild.leftChild) > height(node.rightChild.rightChild)) {
                     // Right-Left case
                     node.rightChild.rotateRight();
+                    TreeMetrics.recordRotation(TreeMetrics.RIGHT_LEFT);
+                } else {
+                    TreeMetrics.recordRotation(TreeMetrics.RIGHT_RIGHT);
                 }
                 // Right-Right case
                 node.rotateLeft();
+                node = node.parent;
             } else if (node.balanceFactor > 1) {
                 if (height(node.leftChild.rightChild) > height(node.leftChild.leftChild)) {
                     // Left-Right case
                     node.leftChild.rotateLeft();
+                    TreeMetrics.recordRotation(TreeMetrics.LEFT_RIGHT);
+                } else {
+                    TreeMetrics.recordRotation(TreeMetrics.LEFT_LEFT);
                 }
                 // Left-Left case
                 node.rotateRight();
+                node = node.parent;
             }
 
+            if (node.height == oldHeight) {
+                return;
+            }
             node = node.parent;
         }
     }
@@ -111,30 +231,32 @@ public class AVLPlayerNode {
     }
 
     /**
-     * Updates the balance factor of the current node in the AVL tree. The balance
-     * factor
-     * is calculated as the height of the left subtree minus the height of the right
-     * subtree.
+     * Updates the cached height and the balance factor of the current node in the
+     * AVL tree from the cached heights of its children. The balance factor is
+     * calculated as the height of the left subtree minus the height of the right
+     * subtree. Runs in constant time.
      */
     private void updateBalanceFactor() {
-        this.balanceFactor = height(this.leftChild) - height(this.rightChild);
+        int leftHeight = height(this.leftChild);
+        int rightHeight = height(this.rightChild);
+        this.height = 1 + Math.max(leftHeight, rightHeight);
+        this.balanceFactor = leftHeight - rightHeight;
     }
 
     /**
-     * Calculates the height of a given node in the AVL tree. The height of a node
-     * is
-     * defined as the number of edges on the longest path from the node to a leaf. A
-     * leaf node will have a height of 0. If the node is null, this method returns
-     * -1,
-     * indicating that the height is undefined for a non-existent (null) node.
+     * Returns the cached height of a given node in the AVL tree. The height of a
+     * node is defined as the number of edges on the longest path from the node to
+     * a leaf. A leaf node will have a height of 0. If the node is null, this
+     * method returns -1, indicating that the height is undefined for a
+     * non-existent (null) node.
      * 
-     * @param node The node for which the height is to be calculated.
+     * @param node The node whose height is wanted.
      * @return The height of the given node. Returns -1 if the node is null.
      */
-    private int height(AVLPlayerNode node) {
+    private static int height(AVLPlayerNode node) {
         if (node == null)
             return -1;
-        return 1 + Math.max(height(node.leftChild), height(node.rightChild));
+        return node.height;
     }
 
     /**
@@ -149,8 +271,11 @@ public class AVLPlayerNode {
      */
     private AVLPlayerNode BSTSearch(double value) {
         AVLPlayerNode current = this;
+        int steps = 0;
         while (current != null) {
+            steps++;
             if (current.value == value) {
+                TreeMetrics.recordPath(steps);
                 return current;
             } else if (value < current.value) {
                 current = current.leftChild;
@@ -158,94 +283,193 @@ public class AVLPlayerNode {
                 current = current.rightChild;
             }
         }
+        TreeMetrics.recordPath(steps);
         return null;
     }
 
     /**
-     * Deletes a node with the specified value from the AVL tree. This method first
-     * searches for the node with the given value. If found, it determines the node
-     * to be removed (which may be the found node itself or its successor) and then
-     * proceeds with the deletion process.
-     * 
-     * @param value The value of the node to be deleted from the AVL tree.
-     * @return The root of the AVL tree after the deletion. If the root was deleted,
-     *         the new root is returned; otherwise, the current root is returned.
+     * Moves a player to a new ELO score. The player's node is located under its
+     * old score in one descent and reused rather than reallocated. If the new
+     * key still falls between the keys of the node's in-order predecessor and
+     * successor, only
+     * the key is rewritten and the tree is not restructured at all; otherwise the
+     * node is unlinked and linked back in at its new position.
+     *
+     * @param player The player whose score changed.
+     * @param oldElo The score the player is currently filed under in this tree.
+     * @param newElo The player's new score.
+     * @return The root of the AVL tree after the update. If the player is not
+     *         filed under oldElo the tree is left unchanged.
      */
-    public AVLPlayerNode delete(double value) {
-        AVLPlayerNode z = BSTSearch(value);
-        AVLPlayerNode y;
-        AVLPlayerNode x;
-        if (z == null) {
+    public AVLPlayerNode updateScore(Player player, double oldElo, double newElo) {
+        AVLPlayerNode node = findNode(player, oldElo);
+        if (node == null) {
             return this;
         }
 
-        if (z.leftChild == null || z.rightChild == null) {
-            y = z;
-        } else {
-            y = treeSuccessor(z);
-        }
-
-        if (y.leftChild != null) {
-            x = y.leftChild;
-        } else {
-            x = y.rightChild;
+        int id = player.getID();
+        AVLPlayerNode pred = treePredecessor(node);
+        AVLPlayerNode succ = treeSuccessor(node);
+        if ((pred == null || pred.compareKey(newElo, id) > 0) && (succ == null || succ.compareKey(newElo, id) < 0)) {
+            node.value = newElo;
+            return this;
         }
 
-        if (x != null) {
-            x.parent = y.parent;
+        AVLPlayerNode root = deleteNode(node);
+        node.value = newElo;
+        if (root == null) {
+            return node;
         }
+        return root.insertNode(node);
+    }
 
-        if (y.parent == null) {
-
-            if (y != z) {
-                z.value = y.value;
-                z.data = y.data;
-                deleteNode(y);
-                return this;
+    /**
+     * Finds the node holding the given player under the given value with a
+     * single descent on the (value, player ID) key.
+     *
+     * @param player The player to look for.
+     * @param value  The value the player is filed under.
+     * @return The player's node, or null if it is not in the tree.
+     */
+    private AVLPlayerNode findNode(Player player, double value) {
+        int id = player.getID();
+        AVLPlayerNode current = this;
+        int steps = 0;
+        while (current != null) {
+            steps++;
+            int cmp = current.compareKey(value, id);
+            if (cmp == 0 && current.data == player) {
+                TreeMetrics.recordPath(steps);
+                return current;
+            } else if (cmp < 0) {
+                current = current.leftChild;
             } else {
-
-                if (x != null) {
-                    x.parent = null;
-                }
-                return x;
+                current = current.rightChild;
             }
-        } else {
-
-            deleteNode(y);
-            return this.getRoot();
         }
+        TreeMetrics.recordPath(steps);
+        return null;
     }
 
     /**
-     * Removes a specified node from the AVL tree. This method handles the
-     * re-linking
-     * of the node's child (if any) to the node's parent, effectively bypassing the
-     * node in the tree. It adjusts the parent's child reference and the child's
-     * parent
-     * reference as needed.
+     * Deletes a node with the specified value from the AVL tree. This method first
+     * searches for the node with the given value. If found, the node is unlinked
+     * (a node with two children is replaced in place by its in-order
+     * predecessor), the right weights on the path to the root are corrected and
+     * the tree is rebalanced from the parent of the removed position upward.
      * 
-     * @param node The node to be deleted from the AVL tree.
-     * @return The root of the AVL tree after the deletion.
+     * @param value The value of the node to be deleted from the AVL tree.
+     * @return The root of the AVL tree after the deletion. If the root was deleted,
+     *         the new root is returned; otherwise, the current root is returned.
+     *         Returns null if the last node was deleted.
+     */
+    public AVLPlayerNode delete(double value) {
+        long start = TreeMetrics.start();
+        AVLPlayerNode z = BSTSearch(value);
+        AVLPlayerNode root = (z == null) ? this : deleteNode(z);
+        TreeMetrics.DELETE.stop(start);
+        return root;
+    }
+
+    /**
+     * Deletes the given player's node from the AVL tree. Unlike delete(value),
+     * this never removes a different player that happens to share the value.
+     *
+     * @param player The player to remove.
+     * @param value  The value the player is filed under.
+     * @return The root of the AVL tree after the deletion, or null if the tree is
+     *         now empty. If the player is not filed under value the tree is left
+     *         unchanged.
      */
+    public AVLPlayerNode delete(Player player, double value) {
+        long start = TreeMetrics.start();
+        AVLPlayerNode z = findNode(player, value);
+        AVLPlayerNode root = (z == null) ? this : deleteNode(z);
+        TreeMetrics.DELETE.stop(start);
+        return root;
+    }
 
+    /**
+     * Removes a specified node from the AVL tree. A node with at most one child
+     * is bypassed by linking its child to its parent. A node with two children is
+     * replaced by its in-order predecessor, which is first unlinked from its own
+     * position and then moved into the removed node's place, so no node ever has
+     * its player or value rewritten. The right weights of every ancestor that
+     * loses a node from its left subtree are decremented, and the tree is then
+     * rebalanced from the lowest node whose subtree changed.
+     * 
+     * @param node The node to be deleted from the AVL tree.
+     * @return The root of the AVL tree after the deletion, or null if the tree is
+     *         now empty.
+     */
     private AVLPlayerNode deleteNode(AVLPlayerNode node) {
-        AVLPlayerNode x = (node.leftChild != null) ? node.leftChild : node.rightChild;
+        AVLPlayerNode start;
+        AVLPlayerNode replacement;
 
-        if (node.parent == null) {
-            if (x != null) {
-                x.parent = null;
-            }
-            return x;
+        if (node.leftChild == null || node.rightChild == null) {
+            replacement = (node.leftChild != null) ? node.leftChild : node.rightChild;
+            decrementWeights(node);
+            start = node.parent;
         } else {
+            replacement = maxValue(node.leftChild);
+            decrementWeights(replacement);
+            if (replacement.parent == node) {
+                start = replacement;
+            } else {
+                start = replacement.parent;
+                start.rightChild = replacement.leftChild;
+                if (replacement.leftChild != null) {
+                    replacement.leftChild.parent = start;
+                }
+                replacement.leftChild = node.leftChild;
+                replacement.leftChild.parent = replacement;
+            }
+            replacement.rightChild = node.rightChild;
+            replacement.rightChild.parent = replacement;
+            replacement.rightWeight = node.rightWeight;
+            replacement.height = node.height;
+            replacement.balanceFactor = node.balanceFactor;
+        }
+
+        if (replacement != null) {
+            replacement.parent = node.parent;
+        }
+        if (node.parent != null) {
             if (node.parent.leftChild == node) {
-                node.parent.leftChild = x;
+                node.parent.leftChild = replacement;
             } else {
-                node.parent.rightChild = x;
+                node.parent.rightChild = replacement;
             }
-            if (x != null) {
-                x.parent = node.parent;
+        }
+        node.parent = null;
+        node.leftChild = null;
+        node.rightChild = null;
+        node.rightWeight = 0;
+        node.height = 0;
+        node.balanceFactor = 0;
+
+        if (start == null) {
+            return replacement;
+        }
+        rebalanceTree(start);
+        return start.getRoot();
+    }
+
+    /**
+     * Decrements the right weight of every ancestor of the given node that holds
+     * it in its left subtree, as if the node had already been removed.
+     *
+     * @param node The node about to be unlinked from the tree.
+     */
+    private void decrementWeights(AVLPlayerNode node) {
+        AVLPlayerNode child = node;
+        AVLPlayerNode parent = node.parent;
+        while (parent != null) {
+            if (parent.leftChild == child) {
+                parent.rightWeight--;
             }
-            return this.getRoot();
+            child = parent;
+            parent = parent.parent;
         }
     }
 
@@ -275,6 +499,30 @@ public class AVLPlayerNode {
         return parent;
     }
 
+    /**
+     * Finds the in-order predecessor of a given node in the AVL tree, the node
+     * with the largest value not greater than the given node's value.
+     * 
+     * @param node The node for which to find the in-order predecessor.
+     * @return The in-order predecessor of the given node, or null if there is none
+     *         (i.e., the given node is the minimum node in the tree).
+     */
+    private AVLPlayerNode treePredecessor(AVLPlayerNode node) {
+
+        if (node.leftChild != null) {
+            return maxValue(node.leftChild);
+        }
+
+        AVLPlayerNode parent = node.parent;
+        int steps = 0;
+        while (parent != null && node == parent.leftChild) {
+            checkDepth(++steps);
+            node = parent;
+            parent = parent.parent;
+        }
+        return parent;
+    }
+
     /**
      * Finds the node with the minimum value in the subtree rooted at the given
      * node.
@@ -292,6 +540,23 @@ public class AVLPlayerNode {
         return node;
     }
 
+    /**
+     * Finds the node with the maximum value in the subtree rooted at the given
+     * node by traversing right down the tree as far as possible.
+     *
+     * @param node The root node of the subtree where the search for the maximum
+     *             value begins.
+     * @return The node with the maximum value in the given subtree.
+     */
+    private AVLPlayerNode maxValue(AVLPlayerNode node) {
+        int steps = 0;
+        while (node.rightChild != null) {
+            checkDepth(++steps);
+            node = node.rightChild;
+        }
+        return node;
+    }
+
     /**
      * Performs a right rotation on this node in the AVL tree. Right rotation is
      * used
@@ -305,9 +570,8 @@ public class AVLPlayerNode {
      * parent (previously the left child of this node) becomes the left subtree of
      * this node.
      *
-     * The balance factors of the affected nodes are updated accordingly to maintain
-     * the
-     * AVL tree properties.
+     * The cached heights and balance factors of the two affected nodes are
+     * updated accordingly to maintain the AVL tree properties.
      */
     private void rotateRight() {
         AVLPlayerNode y = this.leftChild;
@@ -323,7 +587,8 @@ public class AVLPlayerNode {
             y.parent = this.parent;
             this.parent = y;
 
-            y.rightWeight -= 1 + ((this.rightChild != null) ? this.rightChild.rightWeight : 0);
+            // y keeps its left subtree; this now holds only T2 on its left
+            this.rightWeight -= y.rightWeight + 1;
 
             if (y.parent != null) {
                 if (y.parent.leftChild == this) {
@@ -334,9 +599,7 @@ public class AVLPlayerNode {
             }
 
             this.updateBalanceFactor();
-            if (this.leftChild != null) {
-                this.leftChild.updateBalanceFactor();
-            }
+            y.updateBalanceFactor();
         }
     }
 
@@ -353,9 +616,8 @@ public class AVLPlayerNode {
      * parent (previously the right child of this node) becomes the right subtree of
      * this node.
      *
-     * The balance factors of the affected nodes are updated accordingly to maintain
-     * the
-     * AVL tree properties.
+     * The cached heights and balance factors of the two affected nodes are
+     * updated accordingly to maintain the AVL tree properties.
      */
     private void rotateLeft() {
         AVLPlayerNode x = this.rightChild;
@@ -371,8 +633,8 @@ public class AVLPlayerNode {
             x.parent = this.parent;
             this.parent = x;
 
-            this.rightWeight = (T2 != null) ? T2.rightWeight + 1 : 0;
-            x.rightWeight = this.rightWeight + 1;
+            // this keeps its left subtree and becomes the left subtree of x
+            x.rightWeight += this.rightWeight + 1;
 
             if (x.parent != null) {
                 if (x.parent.leftChild == this) {
@@ -383,9 +645,7 @@ public class AVLPlayerNode {
             }
 
             this.updateBalanceFactor();
-            if (this.rightChild != null) {
-                this.rightChild.updateBalanceFactor();
-            }
+            x.updateBalanceFactor();
         }
     }
 
@@ -399,7 +659,9 @@ public class AVLPlayerNode {
      *         If no such node exists, null is returned.
      */
     public Player getPlayer(double value) {
+        long start = TreeMetrics.start();
         AVLPlayerNode foundNode = BSTSearch(value);
+        TreeMetrics.GET_PLAYER.stop(start);
         if (foundNode != null) {
             return foundNode.data;
         }
@@ -408,9 +670,10 @@ public class AVLPlayerNode {
 
     /**
      * Calculates the rank of a node in the AVL tree based on the given ELO score.
-     * The rank is determined by the position of the node in an in-order traversal
-     * of the tree, which reflects the sorted order of nodes. This method uses a
-     * recursive helper function to traverse the tree and find the rank.
+     * The rank is the position of the score on the scoreboard, which lists players
+     * in decreasing order of ELO, so the highest score has rank 1. Players that
+     * share a score share a rank. The rank is found in a single descent using the
+     * right weights, so this runs in O(log n).
      * 
      * @param eloScore The ELO score for which to find the rank in the tree.
      * @return The rank of the node with the given ELO score, or 0 if no such node
@@ -418,34 +681,456 @@ public class AVLPlayerNode {
      */
 
     public int getRank(double eloScore) {
-        return getRankRecursive(this, eloScore);
+        long start = TreeMetrics.start();
+        int atMost = 0;
+        boolean found = false;
+        AVLPlayerNode node = this;
+        int steps = 0;
+        while (node != null) {
+            checkDepth(++steps);
+            if (eloScore < node.value) {
+                node = node.leftChild;
+            } else {
+                found |= eloScore == node.value;
+                atMost += node.rightWeight + 1;
+                node = node.rightChild;
+            }
+        }
+        TreeMetrics.recordPath(steps);
+        int rank = found ? size() - atMost + 1 : 0;
+        TreeMetrics.GET_RANK.stop(start);
+        return rank;
     }
 
     /**
-     * Recursively calculates the rank of a node in the AVL tree based on the given
-     * ELO score.
-     * This method is a helper for the public getRank method and is used to traverse
-     * the tree
-     * and compute the rank. The rank reflects the position of the node in an
-     * in-order traversal
-     * of the tree, taking into account the ELO scores.
+     * Finds the scoreboard position of one player, as selectByRank counts
+     * positions: unlike getRank, players who share a score get distinct
+     * positions, in increasing order of ID. The player is found with a single
+     * descent on the (value, player ID) key, so this runs in O(log n).
      *
-     * 
-     * @param node     The current node being inspected in the AVL tree.
-     * @param eloScore The ELO score for which to find the rank.
-     * @return The rank of the node with the given ELO score. If the node with the
-     *         given ELO
-     *         score does not exist, returns 0.
+     * @param player The player to look for.
+     * @param value  The value the player is filed under.
+     * @return The player's 1-based position, or 0 if the player is not filed
+     *         under value.
+     */
+    public int rankOf(Player player, double value) {
+        int id = player.getID();
+        int atMost = 0;
+        boolean found = false;
+        AVLPlayerNode node = this;
+        int steps = 0;
+        while (node != null) {
+            checkDepth(++steps);
+            int cmp = node.compareKey(value, id);
+            if (cmp < 0) {
+                node = node.leftChild;
+            } else {
+                found |= cmp == 0 && node.data == player;
+                atMost += node.rightWeight + 1;
+                node = node.rightChild;
+            }
+        }
+        return found ? size() - atMost + 1 : 0;
+    }
+
+    /**
+     * Counts the nodes in the subtree rooted at this node by following the right
+     * spine and adding up the right weights along it.
+     *
+     * @return The number of nodes in this subtree.
      */
-    private int getRankRecursive(AVLPlayerNode node, double eloScore) {
+    private int size() {
+        int size = 0;
+        int steps = 0;
+        for (AVLPlayerNode node = this; node != null; node = node.rightChild) {
+            checkDepth(++steps);
+            size += node.rightWeight + 1;
+        }
+        return size;
+    }
+
+    /**
+     * Records the shape of the tree rooted at this node with TreeMetrics, if
+     * metrics are enabled. Counting the nodes takes O(log n), so it is skipped
+     * otherwise. The tree's writes do not call this themselves: the owner of
+     * the leaderboard does after its writes, so the shape metrics describe
+     * that one tree rather than whichever tree in the process changed last,
+     * such as a MatchmakingQueue's.
+     */
+    public void recordShape() {
+        if (TreeMetrics.enabled()) {
+            TreeMetrics.recordShape(height, size());
+        }
+    }
+
+    /**
+     * Fails a read-only descent that has taken more steps than any AVL tree is
+     * tall, which can only happen while a writer is restructuring the tree.
+     *
+     * @param steps The number of steps taken so far.
+     */
+    private static void checkDepth(int steps) {
+        if (steps > MAX_HEIGHT) {
+            throw new ConcurrentModificationException("tree modified during read");
+        }
+    }
+
+    /**
+     * Finds the player at the given scoreboard rank, where rank 1 is the player
+     * with the highest ELO. The right weights steer a single descent to the
+     * node, so this runs in O(log n).
+     *
+     * @param k The 1-based scoreboard rank.
+     * @return The player at that rank, or null if k is out of range.
+     */
+    public Player selectByRank(int k) {
+        AVLPlayerNode node = selectNode(k);
+        return (node == null) ? null : node.data;
+    }
+
+    /**
+     * Finds the node at the given 1-based scoreboard rank.
+     *
+     * @param k The 1-based scoreboard rank.
+     * @return The node at that rank, or null if k is out of range.
+     */
+    private AVLPlayerNode selectNode(int k) {
+        int size = size();
+        if (k < 1 || k > size) {
+            return null;
+        }
+        // position of the node in increasing order of value
+        int index = size - k;
+        AVLPlayerNode node = this;
+        int steps = 0;
+        while (index != node.rightWeight) {
+            checkDepth(++steps);
+            if (index < node.rightWeight) {
+                node = node.leftChild;
+            } else {
+                index -= node.rightWeight + 1;
+                node = node.rightChild;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Finds the player filed closest to the given player. The player's node is
+     * found with one descent and its in-order predecessor and successor are
+     * the only candidates, so this runs in O(log n).
+     *
+     * @param player The player whose neighbour is wanted.
+     * @param value  The value the player is filed under.
+     * @return The nearer of the players filed just below and just above, the
+     *         one below on a tie, or null if the player is alone or not filed
+     *         under value.
+     */
+    public Player nearestNeighbor(Player player, double value) {
+        AVLPlayerNode node = findNode(player, value);
         if (node == null) {
+            return null;
+        }
+        AVLPlayerNode below = treePredecessor(node);
+        AVLPlayerNode above = treeSuccessor(node);
+        if (below == null || above == null) {
+            return (below != null) ? below.data : (above != null) ? above.data : null;
+        }
+        return (value - below.value <= above.value - value) ? below.data : above.data;
+    }
+
+    /**
+     * Counts the players whose score lies in the band [lo, hi], both ends
+     * included. This takes two descents using the right weights, one for the
+     * players below lo and one for those at most hi, so it runs in O(log n)
+     * however wide the band is.
+     *
+     * @param lo The lowest score in the band.
+     * @param hi The highest score in the band.
+     * @return The number of players in the band, or 0 if lo is above hi.
+     */
+    public int countInRange(double lo, double hi) {
+        if (!(lo <= hi)) {
             return 0;
         }
+        return countBelow(hi, true) - countBelow(lo, false);
+    }
 
-        if (eloScore > node.value) {
-            return getRankRecursive(node.rightChild, eloScore) + 1;
+    /**
+     * Counts the nodes whose value is below the bound, or at most the bound if
+     * inclusive, with a single descent.
+     */
+    private int countBelow(double bound, boolean inclusive) {
+        int count = 0;
+        AVLPlayerNode node = this;
+        int steps = 0;
+        while (node != null) {
+            checkDepth(++steps);
+            if (node.value < bound || (inclusive && node.value == bound)) {
+                count += node.rightWeight + 1;
+                node = node.rightChild;
+            } else {
+                node = node.leftChild;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Iterates over the players whose score lies in the band [lo, hi], in
+     * increasing order of score (and, among players that share a score, in
+     * decreasing order of ID). The iterator descends once to the first player
+     * at or above lo and then follows in-order successors, so listing a band
+     * of k players costs O(log n + k). The tree must not change while the
+     * iterator is in use.
+     *
+     * @param lo The lowest score in the band.
+     * @param hi The highest score in the band.
+     * @return An iterator over the players in the band.
+     */
+    public Iterator<Player> bandIterator(double lo, double hi) {
+        AVLPlayerNode first = null;
+        AVLPlayerNode node = this;
+        int steps = 0;
+        while (node != null) {
+            checkDepth(++steps);
+            if (node.value >= lo) {
+                first = node;
+                node = node.leftChild;
+            } else {
+                node = node.rightChild;
+            }
+        }
+        return new BandIterator(first, hi);
+    }
+
+    /**
+     * Walks in-order successors from a starting node until the scores pass
+     * the top of the band.
+     */
+    private final class BandIterator implements Iterator<Player> {
+        private AVLPlayerNode next;
+        private final double hi;
+
+        BandIterator(AVLPlayerNode first, double hi) {
+            this.next = first;
+            this.hi = hi;
+        }
+
+        public boolean hasNext() {
+            return next != null && next.value <= hi;
+        }
+
+        public Player next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            AVLPlayerNode current = next;
+            next = treeSuccessor(current);
+            return current.data;
+        }
+    }
+
+    /**
+     * Ranks many scores at once. The scores are sorted and deduplicated, and
+     * then pushed down the tree together: at each node the sorted range splits
+     * into the scores that go left and those that go right, so queries that
+     * share a path from the root walk it once, and no node is visited more
+     * than once however many scores are asked for: at most min(n, q log n)
+     * visits, each with a binary search of the keys that reach it, against q
+     * full descents for a getRank per score.
+     *
+     * @param elos The scores to rank, in any order, possibly repeated.
+     * @return The rank of each score, as getRank would return it, in the
+     *         order of elos.
+     */
+    public int[] getRanks(double[] elos) {
+        double[] keys = distinctSorted(elos, false);
+        int[] atMost = new int[keys.length];
+        boolean[] found = new boolean[keys.length];
+        rankRange(this, keys, 0, keys.length, 0, atMost, found, 1);
+        return resolveRanks(elos, keys, atMost, found, false);
+    }
+
+    /**
+     * Ranks many scores at once like getRanks, splitting the work across the
+     * common fork-join pool. The query keys are sorted in parallel and each
+     * node whose range of keys is still large forks its two subtrees as
+     * separate tasks. The tree must not change while this runs.
+     *
+     * @param elos The scores to rank, in any order, possibly repeated.
+     * @return The rank of each score, as getRank would return it, in the
+     *         order of elos.
+     */
+    public int[] getRanksParallel(double[] elos) {
+        double[] keys = distinctSorted(elos, true);
+        int[] atMost = new int[keys.length];
+        boolean[] found = new boolean[keys.length];
+        ForkJoinPool.commonPool().invoke(new RankTask(this, keys, 0, keys.length, 0, atMost, found, 1));
+        return resolveRanks(elos, keys, atMost, found, true);
+    }
+
+    /**
+     * Ranks many players at once by ID, looking up each player's score in the
+     * ID index and ranking all the scores with getRanks.
+     *
+     * @param ids     The IDs of the players to rank.
+     * @param idIndex The index to look the players up in.
+     * @return The rank of each player, or 0 for an unknown ID, in the order of
+     *         ids.
+     */
+    public int[] getRanksById(int[] ids, PlayerIndex idIndex) {
+        return getRanks(elosOf(ids, idIndex));
+    }
+
+    /**
+     * Ranks many players at once by ID like getRanksById, with the ranking done
+     * by getRanksParallel.
+     *
+     * @param ids     The IDs of the players to rank.
+     * @param idIndex The index to look the players up in.
+     * @return The rank of each player, or 0 for an unknown ID, in the order of
+     *         ids.
+     */
+    public int[] getRanksByIdParallel(int[] ids, PlayerIndex idIndex) {
+        return getRanksParallel(elosOf(ids, idIndex));
+    }
+
+    /**
+     * Looks up the score of each player. An unknown ID gets NaN, which no node
+     * ever equals, so it ranks 0.
+     */
+    private static double[] elosOf(int[] ids, PlayerIndex idIndex) {
+        double[] elos = new double[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            Player p = idIndex.get(ids[i]);
+            elos[i] = (p == null) ? Double.NaN : p.getELO();
+        }
+        return elos;
+    }
+
+    private static double[] distinctSorted(double[] elos, boolean parallel) {
+        double[] keys = elos.clone();
+        if (parallel) {
+            Arrays.parallelSort(keys);
         } else {
-            return getRankRecursive(node.leftChild, eloScore) + node.rightWeight + 1;
+            Arrays.sort(keys);
+        }
+        int distinct = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (distinct == 0 || Double.compare(keys[distinct - 1], keys[i]) != 0) {
+                keys[distinct++] = keys[i];
+            }
+        }
+        return Arrays.copyOf(keys, distinct);
+    }
+
+    /**
+     * Pushes the sorted keys in [from, to) down the subtree rooted at node.
+     * For each key this records how many nodes outside the subtree have a
+     * value of at most the key, plus those inside it once the key reaches a
+     * leaf, and whether any node holds the key.
+     *
+     * @param atMost The number of nodes ranked at or below the keys by the
+     *               ancestors of node.
+     * @param steps  The depth of node, counting the root as 1.
+     */
+    private static void rankRange(AVLPlayerNode node, double[] keys, int from, int to, int atMost, int[] counts,
+            boolean[] found, int steps) {
+        while (from < to) {
+            if (node == null) {
+                Arrays.fill(counts, from, to, atMost);
+                return;
+            }
+            checkDepth(steps++);
+            int split = splitKeys(node, keys, from, to, found);
+            rankRange(node.leftChild, keys, from, split, atMost, counts, found, steps);
+            from = split;
+            atMost += node.rightWeight + 1;
+            node = node.rightChild;
+        }
+    }
+
+    /**
+     * Finds where the sorted keys in [from, to) split between the keys that
+     * go left of node, which are below its value, and the rest, and marks the
+     * keys equal to its value as found. The comparisons are the ones getRank
+     * makes, so -0.0 and 0.0 go the same way and NaN always goes right.
+     *
+     * @return The index of the first key that goes right.
+     */
+    private static int splitKeys(AVLPlayerNode node, double[] keys, int from, int to, boolean[] found) {
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < node.value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < to && keys[i] == node.value; i++) {
+            found[i] = true;
+        }
+        return lo;
+    }
+
+    /**
+     * Turns the counts of the distinct keys into ranks and hands each query
+     * the rank of its key.
+     */
+    private int[] resolveRanks(double[] elos, double[] keys, int[] atMost, boolean[] found, boolean parallel) {
+        int size = size();
+        int[] keyRanks = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keyRanks[i] = found[i] ? size - atMost[i] + 1 : 0;
+        }
+        int[] ranks = new int[elos.length];
+        IntStream indexes = IntStream.range(0, elos.length);
+        (parallel ? indexes.parallel() : indexes)
+                .forEach(i -> ranks[i] = keyRanks[Arrays.binarySearch(keys, elos[i])]);
+        return ranks;
+    }
+
+    /**
+     * The fork-join form of rankRange. A task whose range of keys is small
+     * enough runs rankRange itself; a larger one forks a task per child.
+     */
+    private static final class RankTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final AVLPlayerNode node;
+        private final double[] keys;
+        private final int from;
+        private final int to;
+        private final int atMost;
+        private final int[] counts;
+        private final boolean[] found;
+        private final int steps;
+
+        RankTask(AVLPlayerNode node, double[] keys, int from, int to, int atMost, int[] counts, boolean[] found,
+                int steps) {
+            this.node = node;
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+            this.atMost = atMost;
+            this.counts = counts;
+            this.found = found;
+            this.steps = steps;
+        }
+
+        protected void compute() {
+            if (to - from <= PARALLEL_RANK_QUERIES || node == null) {
+                rankRange(node, keys, from, to, atMost, counts, found, steps);
+                return;
+            }
+            checkDepth(steps);
+            int split = splitKeys(node, keys, from, to, found);
+            invokeAll(new RankTask(node.leftChild, keys, from, split, atMost, counts, found, steps + 1),
+                    new RankTask(node.rightChild, keys, split, to, atMost + node.rightWeight + 1, counts, found,
+                            steps + 1));
         }
     }
 
@@ -464,12 +1149,11 @@ public class AVLPlayerNode {
 
     /**
      * Retrieves the right weight of this node in the AVL tree. The right weight is
-     * a measure that indicates the number of nodes in the right subtree of this
-     * node.
-     * It is used to quickly assess the size of the right subtree without needing to
-     * traverse it.
+     * the number of nodes in the left subtree of this node, i.e. the players that
+     * rank below it on the scoreboard. It is kept exact through inserts, deletes
+     * and rotations so ranks can be computed without traversing the subtree.
      * 
-     * @return The number of nodes in the right subtree of this node.
+     * @return The number of nodes in the left subtree of this node.
      */
     public int getRightWeight() {
         return this.rightWeight;
@@ -480,13 +1164,13 @@ public class AVLPlayerNode {
      * the number
      * of edges on the longest path from this node to a leaf node. A leaf node has a
      * height of 0.
-     * This method utilizes a recursive helper function to calculate the height.
+     * The height is cached on the node, so this runs in constant time.
      * 
      * @return The height of this node in the AVL tree.
      */
 
     public int getHeight() {
-        return height(this);
+        return this.height;
     }
 
     /**
@@ -541,30 +1225,93 @@ public class AVLPlayerNode {
      */
     public String scoreboard() {
         StringBuilder sb = new StringBuilder();
-        sb.append(String.format("%-10s %-3s %s\n", "NAME", "ID", "SCORE"));
-        inOrderTraversal(sb, this);
+        try {
+            writeScoreboard(sb);
+        } catch (IOException e) {
+            // a StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
         return sb.toString();
     }
 
     /**
-     * A helper method that performs an in-order traversal of the AVL tree,
-     * starting from the given node. During the traversal, it appends each node's
-     * data to the provided StringBuilder object. The data includes the player's
-     * name, ID, and ELO score, formatted in a line item format suitable for
-     * display in a scoreboard.
+     * Generates one page of the scoreboard. This descends straight to the first
+     * player on the page using the right weights and then walks in-order
+     * predecessors for the rest of the page, so the cost depends on the page
+     * size and not on the number of players. The header and row format match
+     * scoreboard().
      *
-     * * @param sb The StringBuilder object used to build the scoreboard string.
-     * 
-     * @param node The current node being processed in the AVL tree.
+     * @param offset The number of top-ranked players to skip.
+     * @param limit  The maximum number of players to list.
+     * @return A string representing the requested page of the scoreboard.
      */
-    private void inOrderTraversal(StringBuilder sb, AVLPlayerNode node) {
-        if (node == null) {
-            return;
+    public String scoreboard(int offset, int limit) {
+        long start = TreeMetrics.start();
+        StringBuilder sb = new StringBuilder();
+        ScoreboardWriter writer = new ScoreboardWriter(sb);
+        try {
+            writer.writeHeader();
+            AVLPlayerNode node = (offset < 0) ? null : selectNode(offset + 1);
+            for (int i = 0; i < limit && node != null; i++) {
+                writer.writeRow(node.data);
+                node = treePredecessor(node);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        TreeMetrics.SCOREBOARD.stop(start);
+        return sb.toString();
+    }
+
+    /**
+     * Streams the scoreboard to the given Appendable instead of building it as
+     * one string. Rows are formatted by hand into a fixed-size buffer that is
+     * flushed as it fills, and the tree is walked through in-order predecessors
+     * without recursion, so heap use stays bounded however large the tree is.
+     * The output is identical to scoreboard().
+     *
+     * @param out Where to write the scoreboard.
+     * @throws IOException If writing to out fails.
+     */
+    public void writeScoreboard(Appendable out) throws IOException {
+        long start = TreeMetrics.start();
+        ScoreboardWriter writer = new ScoreboardWriter(out);
+        writer.writeHeader();
+        for (AVLPlayerNode node = maxValue(this); node != null; node = treePredecessor(node)) {
+            writer.writeRow(node.data);
+        }
+        writer.flush();
+        TreeMetrics.SCOREBOARD.stop(start);
+    }
+
+    /**
+     * Streams the scoreboard to the given OutputStream as UTF-8. The stream is
+     * flushed but not closed.
+     *
+     * @param out Where to write the scoreboard.
+     * @throws IOException If writing to out fails.
+     */
+    public void writeScoreboard(OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writeScoreboard(writer);
+        writer.flush();
+    }
+
+    /**
+     * Lists the players in increasing order of value, the order fromSorted
+     * expects, by walking in-order successors from the minimum.
+     *
+     * @return The players of the tree, lowest value first.
+     */
+    public Player[] toSortedArray() {
+        Player[] players = new Player[size()];
+        AVLPlayerNode node = minValue(this);
+        for (int i = 0; i < players.length; i++) {
+            players[i] = node.data;
+            node = treeSuccessor(node);
         }
-        inOrderTraversal(sb, node.rightChild);
-        Player player = node.data;
-        sb.append(String.format("%-10s %-3d %.2f\n", player.getName(), player.getID(), player.getELO()));
-        inOrderTraversal(sb, node.leftChild);
+        return players;
     }
 
 }
@@ -0,0 +1,446 @@
+package main;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * An AVL leaderboard that keeps its nodes in parallel primitive arrays instead
+ * of one object per node. A node is an int index into the arrays, index 0 is
+ * the shared null node, and the slots of deleted nodes are chained on a free
+ * list and reused by later inserts. Supports the same operations as
+ * AVLPlayerNode, but is meant for very large leaderboards where memory
+ * footprint and GC pauses matter most.
+ *
+ * Nodes are keyed like AVLPlayerNode: by value and, among players that share
+ * a value, by decreasing ID, so both engines list ties in the same order and
+ * a specific player can be deleted in one descent.
+ */
+public class ArrayLeaderboard implements Leaderboard {
+    private static final int NIL = 0;
+
+    private double[] key;
+    private Player[] player;
+    private int[] left;
+    private int[] right;
+    private int[] parent;
+    private int[] size;
+    private int[] height;
+
+    private int root = NIL;
+    private int nextUnused = 1;
+    private int freeHead = NIL;
+
+    public ArrayLeaderboard() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty leaderboard with room for the given number of players
+     * before any array has to grow.
+     *
+     * @param capacity The number of players to allocate room for.
+     */
+    public ArrayLeaderboard(int capacity) {
+        int slots = Math.max(capacity, 1) + 1;
+        key = new double[slots];
+        player = new Player[slots];
+        left = new int[slots];
+        right = new int[slots];
+        parent = new int[slots];
+        size = new int[slots];
+        height = new int[slots];
+        height[NIL] = -1;
+    }
+
+    /**
+     * Inserts a player under the given value and rebalances the tree.
+     *
+     * @param newGuy The player object to be inserted.
+     * @param value  The value used to position the player.
+     * @return This leaderboard.
+     */
+    public ArrayLeaderboard insert(Player newGuy, double value) {
+        int z = allocate(newGuy, value);
+        int v = NIL;
+        int n = root;
+        int id = newGuy.getID();
+        while (n != NIL) {
+            v = n;
+            size[n]++;
+            n = (compareKey(n, value, id) < 0) ? left[n] : right[n];
+        }
+        parent[z] = v;
+        if (v == NIL) {
+            root = z;
+            return this;
+        } else if (compareKey(v, value, id) < 0) {
+            left[v] = z;
+        } else {
+            right[v] = z;
+        }
+        rebalance(v);
+        return this;
+    }
+
+    /**
+     * Deletes a node with the specified value. A node with two children is
+     * replaced by its in-order predecessor, the subtree sizes on the path to the
+     * root are corrected and the tree is rebalanced. The freed slot is put on
+     * the free list.
+     *
+     * @param value The value of the node to be deleted.
+     * @return This leaderboard.
+     */
+    public ArrayLeaderboard delete(double value) {
+        int z = search(value);
+        if (z != NIL) {
+            deleteNode(z);
+        }
+        return this;
+    }
+
+    /**
+     * Deletes the given player's node. Unlike delete(value), this never removes
+     * a different player that happens to share the value.
+     *
+     * @param p     The player to remove.
+     * @param value The value the player is filed under.
+     * @return true if the player was found and removed.
+     */
+    public boolean delete(Player p, double value) {
+        int z = findNode(p, value);
+        if (z == NIL) {
+            return false;
+        }
+        deleteNode(z);
+        return true;
+    }
+
+    /**
+     * Unlinks the given node, corrects the subtree sizes on the path to the
+     * root, rebalances and puts the freed slot on the free list.
+     */
+    private void deleteNode(int z) {
+        int start;
+        int replacement;
+        if (left[z] == NIL || right[z] == NIL) {
+            replacement = (left[z] != NIL) ? left[z] : right[z];
+            start = parent[z];
+            shrinkPath(start);
+        } else {
+            replacement = left[z];
+            while (right[replacement] != NIL) {
+                replacement = right[replacement];
+            }
+            shrinkPath(parent[replacement]);
+            if (parent[replacement] == z) {
+                start = replacement;
+            } else {
+                start = parent[replacement];
+                right[start] = left[replacement];
+                if (left[replacement] != NIL) {
+                    parent[left[replacement]] = start;
+                }
+                left[replacement] = left[z];
+                parent[left[z]] = replacement;
+            }
+            right[replacement] = right[z];
+            parent[right[z]] = replacement;
+            size[replacement] = size[z];
+            height[replacement] = height[z];
+        }
+
+        if (replacement != NIL) {
+            parent[replacement] = parent[z];
+        }
+        replaceChild(parent[z], z, replacement);
+        release(z);
+        rebalance(start);
+    }
+
+    /**
+     * Retrieves the player stored under the given value.
+     *
+     * @param value The value to look up.
+     * @return The player, or null if no node has that value.
+     */
+    public Player getPlayer(double value) {
+        int n = search(value);
+        return (n == NIL) ? null : player[n];
+    }
+
+    /**
+     * Calculates the scoreboard rank of the given ELO score, where the highest
+     * score has rank 1 and players sharing a score share a rank.
+     *
+     * @param eloScore The ELO score to rank.
+     * @return The rank of the score, or 0 if no node has that score.
+     */
+    public int getRank(double eloScore) {
+        int greater = 0;
+        boolean found = false;
+        int n = root;
+        while (n != NIL) {
+            if (eloScore < key[n]) {
+                greater += size[right[n]] + 1;
+                n = left[n];
+            } else {
+                found |= eloScore == key[n];
+                n = right[n];
+            }
+        }
+        return found ? greater + 1 : 0;
+    }
+
+    /**
+     * Finds the player at the given scoreboard rank using the subtree sizes.
+     *
+     * @param k The 1-based scoreboard rank.
+     * @return The player at that rank, or null if k is out of range.
+     */
+    public Player selectByRank(int k) {
+        if (k < 1 || k > size[root]) {
+            return null;
+        }
+        int n = root;
+        while (true) {
+            int above = size[right[n]];
+            if (k <= above) {
+                n = right[n];
+            } else if (k == above + 1) {
+                return player[n];
+            } else {
+                k -= above + 1;
+                n = left[n];
+            }
+        }
+    }
+
+    /**
+     * Generates the scoreboard in decreasing order of value, in the same format
+     * as AVLPlayerNode.scoreboard().
+     *
+     * @return A string representing the scoreboard.
+     */
+    public String scoreboard() {
+        StringBuilder sb = new StringBuilder();
+        ScoreboardWriter writer = new ScoreboardWriter(sb);
+        try {
+            writer.writeHeader();
+            int n = root;
+            while (n != NIL && right[n] != NIL) {
+                n = right[n];
+            }
+            while (n != NIL) {
+                writer.writeRow(player[n]);
+                n = predecessor(n);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return The number of players on the leaderboard.
+     */
+    public int size() {
+        return size[root];
+    }
+
+    /**
+     * @return The height of the tree, or -1 if it is empty.
+     */
+    public int getHeight() {
+        return height[root];
+    }
+
+    /**
+     * Compares the (value, ID) key with the key of node n, in the order of
+     * AVLPlayerNode.compareKey.
+     */
+    private int compareKey(int n, double value, int id) {
+        if (value < key[n]) {
+            return -1;
+        } else if (value > key[n]) {
+            return 1;
+        }
+        return Integer.compare(player[n].getID(), id);
+    }
+
+    /**
+     * Finds the node holding the given player under the given value.
+     */
+    private int findNode(Player p, double value) {
+        int id = p.getID();
+        int n = root;
+        while (n != NIL) {
+            int cmp = compareKey(n, value, id);
+            if (cmp == 0 && player[n] == p) {
+                return n;
+            }
+            n = (cmp < 0) ? left[n] : right[n];
+        }
+        return NIL;
+    }
+
+    private int search(double value) {
+        int n = root;
+        while (n != NIL && key[n] != value) {
+            n = (value < key[n]) ? left[n] : right[n];
+        }
+        return n;
+    }
+
+    private int predecessor(int n) {
+        if (left[n] != NIL) {
+            n = left[n];
+            while (right[n] != NIL) {
+                n = right[n];
+            }
+            return n;
+        }
+        int p = parent[n];
+        while (p != NIL && n == left[p]) {
+            n = p;
+            p = parent[p];
+        }
+        return p;
+    }
+
+    private void shrinkPath(int n) {
+        while (n != NIL) {
+            size[n]--;
+            n = parent[n];
+        }
+    }
+
+    private void replaceChild(int p, int oldChild, int newChild) {
+        if (p == NIL) {
+            root = newChild;
+        } else if (left[p] == oldChild) {
+            left[p] = newChild;
+        } else {
+            right[p] = newChild;
+        }
+    }
+
+    /**
+     * Walks from the given node towards the root, refreshing heights and
+     * rotating where needed, and stops once a subtree's height is unchanged.
+     */
+    private void rebalance(int n) {
+        while (n != NIL) {
+            int oldHeight = height[n];
+            update(n);
+            int balance = height[left[n]] - height[right[n]];
+
+            if (balance < -1) {
+                if (height[left[right[n]]] > height[right[right[n]]]) {
+                    // Right-Left case
+                    rotateRight(right[n]);
+                }
+                // Right-Right case
+                n = rotateLeft(n);
+            } else if (balance > 1) {
+                if (height[right[left[n]]] > height[left[left[n]]]) {
+                    // Left-Right case
+                    rotateLeft(left[n]);
+                }
+                // Left-Left case
+                n = rotateRight(n);
+            }
+
+            if (height[n] == oldHeight) {
+                return;
+            }
+            n = parent[n];
+        }
+    }
+
+    private void update(int n) {
+        height[n] = 1 + Math.max(height[left[n]], height[right[n]]);
+        size[n] = size[left[n]] + size[right[n]] + 1;
+    }
+
+    private int rotateLeft(int x) {
+        int y = right[x];
+        int t2 = left[y];
+        right[x] = t2;
+        if (t2 != NIL) {
+            parent[t2] = x;
+        }
+        parent[y] = parent[x];
+        replaceChild(parent[x], x, y);
+        left[y] = x;
+        parent[x] = y;
+        update(x);
+        update(y);
+        return y;
+    }
+
+    private int rotateRight(int x) {
+        int y = left[x];
+        int t2 = right[y];
+        left[x] = t2;
+        if (t2 != NIL) {
+            parent[t2] = x;
+        }
+        parent[y] = parent[x];
+        replaceChild(parent[x], x, y);
+        right[y] = x;
+        parent[x] = y;
+        update(x);
+        update(y);
+        return y;
+    }
+
+    /**
+     * Takes a slot from the free list, or the next unused slot, growing the
+     * arrays when they are full.
+     */
+    private int allocate(Player p, double value) {
+        int n;
+        if (freeHead != NIL) {
+            n = freeHead;
+            freeHead = parent[n];
+        } else {
+            if (nextUnused == key.length) {
+                grow();
+            }
+            n = nextUnused++;
+        }
+        key[n] = value;
+        player[n] = p;
+        left[n] = NIL;
+        right[n] = NIL;
+        parent[n] = NIL;
+        size[n] = 1;
+        height[n] = 0;
+        return n;
+    }
+
+    /**
+     * Puts a slot on the free list, which is chained through the parent array.
+     */
+    private void release(int n) {
+        player[n] = null;
+        left[n] = NIL;
+        right[n] = NIL;
+        parent[n] = freeHead;
+        freeHead = n;
+    }
+
+    private void grow() {
+        int capacity = key.length << 1;
+        key = Arrays.copyOf(key, capacity);
+        player = Arrays.copyOf(player, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        size = Arrays.copyOf(size, capacity);
+        height = Arrays.copyOf(height, capacity);
+    }
+}
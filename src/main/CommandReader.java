@@ -0,0 +1,138 @@
+package main;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+
+/**
+ * A whitespace tokenizer for scripted input, the non-interactive counterpart
+ * of the Scanner the driver loop reads from. It scans raw bytes out of a
+ * large buffer and parses ints without creating strings or running regular
+ * expressions.
+ *
+ * Output that answers earlier commands is flushed only when the next read
+ * would block, so a script piped in all at once is answered with a few large
+ * writes while an interactive client still sees each answer before it types
+ * the next command.
+ */
+public class CommandReader {
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final InputStream in;
+    private final Flushable output;
+    private final byte[] buffer = new byte[BUFFER_BYTES];
+    private int position;
+    private int limit;
+    private byte[] token = new byte[64];
+
+    /**
+     * @param in     The input to read commands from.
+     * @param output The output to flush before blocking on the input, or null.
+     */
+    public CommandReader(InputStream in, Flushable output) {
+        this.in = in;
+        this.output = output;
+    }
+
+    /**
+     * @return The next token, or null at the end of the input.
+     * @throws IOException If the input cannot be read.
+     */
+    public String next() throws IOException {
+        int length = readToken();
+        return (length < 0) ? null : new String(token, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The next token as an int.
+     * @throws IOException            If the input cannot be read.
+     * @throws InputMismatchException If the token is missing or not an int.
+     */
+    public int nextInt() throws IOException {
+        int length = readToken();
+        if (length <= 0) {
+            throw new InputMismatchException("expected an int");
+        }
+        boolean negative = token[0] == '-';
+        int i = negative ? 1 : 0;
+        if (i == length) {
+            throw new InputMismatchException("expected an int");
+        }
+        long value = 0;
+        for (; i < length; i++) {
+            int digit = token[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new InputMismatchException("expected an int: " + new String(token, 0, length,
+                        StandardCharsets.UTF_8));
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new InputMismatchException("int out of range");
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new InputMismatchException("int out of range");
+        }
+        return (int) value;
+    }
+
+    /**
+     * @return The next token as a double.
+     * @throws IOException            If the input cannot be read.
+     * @throws InputMismatchException If the token is missing or not a number.
+     */
+    public double nextDouble() throws IOException {
+        String text = next();
+        if (text == null) {
+            throw new InputMismatchException("expected a number");
+        }
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new InputMismatchException("expected a number: " + text);
+        }
+    }
+
+    /**
+     * Reads the next token into the token buffer.
+     *
+     * @return Its length in bytes, or -1 at the end of the input.
+     */
+    private int readToken() throws IOException {
+        int b;
+        do {
+            b = read();
+        } while (b == ' ' || b == '\n' || b == '\r' || b == '\t');
+        if (b < 0) {
+            return -1;
+        }
+        int length = 0;
+        while (b >= 0 && b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+            if (length == token.length) {
+                token = Arrays.copyOf(token, length * 2);
+            }
+            token[length++] = (byte) b;
+            b = read();
+        }
+        return length;
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            if (output != null && in.available() == 0) {
+                output.flush();
+            }
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++] & 0xFF;
+    }
+}
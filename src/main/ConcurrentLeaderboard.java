@@ -0,0 +1,398 @@
+package main;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A thread-safe leaderboard over an ELO tree and an ID index. Writes take the
+ * write lock of a StampedLock and are therefore serialized. Reads first run
+ * under an optimistic stamp without blocking anyone and only retry under the
+ * read lock if a write happened in the meantime, so lookups from many request
+ * threads scale with the number of cores while matches are being recorded.
+ *
+ * A read that races a write may see the tree half-restructured. Such a read
+ * either finishes with a result that fails validation, or fails outright
+ * (the tree's descents are bounded and throw on a runaway walk); both cases
+ * fall back to the read lock. An exception thrown by a read that still
+ * validates is a real error and is passed on.
+ */
+public class ConcurrentLeaderboard {
+    private final StampedLock lock = new StampedLock();
+    private AVLPlayerNode eloTree;
+    private final PlayerIndex idIndex;
+    private final RankFeed rankFeed;
+
+    /**
+     * Creates a leaderboard holding the given players.
+     *
+     * @param players The starting players.
+     */
+    public ConcurrentLeaderboard(Player[] players) {
+        this(ScoreKeeper.getTree(players, true), ScoreKeeper.getIndex(players));
+    }
+
+    /**
+     * Wraps an existing ELO tree and ID index over the same players, such as
+     * those loaded from a snapshot. The leaderboard takes them over; they must
+     * not be used directly afterwards.
+     *
+     * @param eloTree The root of the ELO tree.
+     * @param idIndex The ID index.
+     */
+    public ConcurrentLeaderboard(AVLPlayerNode eloTree, PlayerIndex idIndex) {
+        this(eloTree, idIndex, new RankFeed());
+    }
+
+    /**
+     * Wraps an existing ELO tree and ID index like
+     * ConcurrentLeaderboard(eloTree, idIndex), publishing rank changes to the
+     * given feed.
+     *
+     * @param eloTree  The root of the ELO tree.
+     * @param idIndex  The ID index.
+     * @param rankFeed The feed to publish rank changes to.
+     */
+    public ConcurrentLeaderboard(AVLPlayerNode eloTree, PlayerIndex idIndex, RankFeed rankFeed) {
+        this.eloTree = eloTree;
+        this.idIndex = idIndex;
+        this.rankFeed = rankFeed;
+    }
+
+    /**
+     * @param id The ID of the player.
+     * @return The player with that ID, or null if there is none.
+     */
+    public Player getPlayer(int id) {
+        return read(() -> idIndex.get(id));
+    }
+
+    /**
+     * @param id The ID of the player.
+     * @return The scoreboard rank of the player, or 0 if there is no such player.
+     */
+    public int getRank(int id) {
+        return readInt(() -> {
+            Player p = idIndex.get(id);
+            return (p == null || eloTree == null) ? 0 : eloTree.getRank(p.getELO());
+        });
+    }
+
+    /**
+     * Looks up a player and their rank in one read, so the rank is the
+     * player's rank on the board the player was found on.
+     *
+     * @param id The ID of the player.
+     * @return The player and their scoreboard rank, or null if there is no
+     *         such player.
+     */
+    public Ranked getRanked(int id) {
+        return read(() -> {
+            Player p = idIndex.get(id);
+            return (p == null) ? null : new Ranked(p, eloTree.getRank(p.getELO()));
+        });
+    }
+
+    /**
+     * @param lo The lowest score in the band.
+     * @param hi The highest score in the band.
+     * @return The number of players whose score lies in [lo, hi].
+     */
+    public int countInRange(double lo, double hi) {
+        return readInt(() -> (eloTree == null) ? 0 : eloTree.countInRange(lo, hi));
+    }
+
+    /**
+     * Ranks many players in one pass over the tree, see
+     * AVLPlayerNode.getRanksById. Large query sets make this a long read, so
+     * it goes straight to the read lock.
+     *
+     * @param ids The IDs of the players.
+     * @return The rank of each player, or 0 for an unknown ID, in the order of
+     *         ids.
+     */
+    public int[] getRanks(int[] ids) {
+        long stamp = lock.readLock();
+        try {
+            return (eloTree == null) ? new int[ids.length] : eloTree.getRanksById(ids, idIndex);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @param k The 1-based scoreboard rank.
+     * @return The player at that rank, or null if k is out of range.
+     */
+    public Player selectByRank(int k) {
+        return read(() -> (eloTree == null) ? null : eloTree.selectByRank(k));
+    }
+
+    /**
+     * @param offset The number of top-ranked players to skip.
+     * @param limit  The maximum number of players to list.
+     * @return One page of the scoreboard, formatted like
+     *         AVLPlayerNode.scoreboard(offset, limit).
+     */
+    public String scoreboard(int offset, int limit) {
+        return read(() -> (eloTree == null) ? header() : eloTree.scoreboard(offset, limit));
+    }
+
+    /**
+     * Renders the whole scoreboard. This is a long read, so it goes straight to
+     * the read lock rather than risk repeating the walk.
+     *
+     * @return The whole scoreboard.
+     */
+    public String scoreboard() {
+        long stamp = lock.readLock();
+        try {
+            return (eloTree == null) ? header() : eloTree.scoreboard();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return The ELO tree in parentheses format, rendered under the read lock.
+     */
+    public String treeString() {
+        long stamp = lock.readLock();
+        try {
+            return (eloTree == null) ? "" : eloTree.treeString();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Writes the leaderboard to a PlayerSnapshot under the read lock, so the
+     * snapshot holds every write made before it and none made during it.
+     *
+     * @param file The snapshot file.
+     * @throws IOException If the snapshot could not be written.
+     */
+    public void writeSnapshot(Path file) throws IOException {
+        long stamp = lock.readLock();
+        try {
+            PlayerSnapshot.write(file, (eloTree == null) ? new Player[0] : eloTree.toSortedArray());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return The number of players on the leaderboard.
+     */
+    public int size() {
+        return readInt(idIndex::size);
+    }
+
+    /**
+     * @return The feed of rank changes made by addPlayer, removePlayer,
+     *         recordMatch and applyBatch. Changes are only worked out while
+     *         someone is subscribed; while anyone is, batches move their
+     *         players one at a time instead of rebuilding the tree. To follow
+     *         the scoreboard from the feed, subscribe through subscribe, which
+     *         also gives the order the changes apply to.
+     */
+    public RankFeed getRankFeed() {
+        return rankFeed;
+    }
+
+    /**
+     * Subscribes to the rank feed and reads the scoreboard order it starts
+     * from, both under the read lock. Changes are published under the write
+     * lock, so the subscriber receives exactly the changes made after the
+     * order it was given, and a client can follow the scoreboard by applying
+     * them to it. The subscriber's onSubscribe runs under the read lock, so it
+     * must not write to the leaderboard.
+     *
+     * @param subscriber The subscriber to the feed.
+     * @return The IDs of the players in scoreboard order, rank 1 first.
+     */
+    public int[] subscribe(Flow.Subscriber<? super RankChange> subscriber) {
+        long stamp = lock.readLock();
+        try {
+            Player[] sorted = (eloTree == null) ? new Player[0] : eloTree.toSortedArray();
+            int[] ids = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                ids[i] = sorted[sorted.length - 1 - i].getID();
+            }
+            rankFeed.subscribe(subscriber);
+            return ids;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Adds a player. A player whose ID is already taken is not added.
+     *
+     * @param p The player to add.
+     * @return true if the player was added.
+     */
+    public boolean addPlayer(Player p) {
+        long stamp = lock.writeLock();
+        try {
+            if (idIndex.get(p.getID()) != null) {
+                return false;
+            }
+            idIndex.put(p);
+            eloTree = (eloTree == null) ? new AVLPlayerNode(p, p.getELO()) : eloTree.insert(p, p.getELO());
+            eloTree.recordShape();
+            if (rankFeed.hasSubscribers()) {
+                rankFeed.publish(new RankChange(p.getID(), 0, eloTree.rankOf(p, p.getELO()), idIndex.size() - 1));
+            }
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the player with the given ID.
+     *
+     * @param id The ID of the player to remove.
+     * @return The removed player, or null if there was no such player.
+     */
+    public Player removePlayer(int id) {
+        long stamp = lock.writeLock();
+        try {
+            Player p = idIndex.remove(id);
+            if (p != null) {
+                int oldRank = rankFeed.hasSubscribers() ? eloTree.rankOf(p, p.getELO()) : 0;
+                eloTree = eloTree.delete(p, p.getELO());
+                if (eloTree != null) {
+                    eloTree.recordShape();
+                }
+                if (oldRank != 0) {
+                    rankFeed.publish(new RankChange(id, oldRank, 0, idIndex.size() + 1));
+                }
+            }
+            return p;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Records the outcome of one match.
+     *
+     * @param id1     The ID of the first player.
+     * @param id2     The ID of the second player.
+     * @param outcome MatchBatch.FIRST_WINS, SECOND_WINS or DRAW.
+     * @return The batch statistics for the single match.
+     */
+    public MatchBatch.Result recordMatch(int id1, int id2, int outcome) {
+        MatchBatch batch = new MatchBatch(1);
+        batch.add(id1, id2, outcome);
+        return applyBatch(batch);
+    }
+
+    /**
+     * Applies a batch of match results under one write lock.
+     *
+     * @param batch The matches to apply.
+     * @return The statistics for the batch.
+     */
+    public MatchBatch.Result applyBatch(MatchBatch batch) {
+        long stamp = lock.writeLock();
+        try {
+            MatchBatch.Result result = batch.apply(eloTree, idIndex, rankFeed.hasSubscribers() ? rankFeed : null);
+            eloTree = result.getTree();
+            if (eloTree != null) {
+                eloTree.recordShape();
+            }
+            return result;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * The scoreboard of an empty board: just the header the engines print.
+     */
+    private static String header() {
+        StringBuilder sb = new StringBuilder();
+        ScoreboardWriter writer = new ScoreboardWriter(sb);
+        try {
+            writer.writeHeader();
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A player together with their scoreboard rank, as read by getRanked.
+     */
+    public static final class Ranked {
+        private final Player player;
+        private final int rank;
+
+        Ranked(Player player, int rank) {
+            this.player = player;
+            this.rank = rank;
+        }
+
+        public Player getPlayer() {
+            return player;
+        }
+
+        public int getRank() {
+            return rank;
+        }
+    }
+
+    private <T> T read(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+                // torn read of a structure being written, retry under the lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int readInt(IntSupplier reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int result = reader.getAsInt();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+                // torn read of a structure being written, retry under the lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.getAsInt();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
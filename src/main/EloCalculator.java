@@ -0,0 +1,99 @@
+package main;
+
+/**
+ * Computes Elo rating changes. The expected score of a player depends only on
+ * the rating difference, 1 / (1 + 10^((opponent - rating) / 400)), so each
+ * match costs a single Math.exp instead of one Math.pow per player. The points
+ * won by one side are exactly the points lost by the other.
+ *
+ * Results agree with the original per-player formulation (two Math.pow calls
+ * and a ratio per player) to within 1e-9 rating points for any pair of ratings
+ * less than 10000 apart; the difference is floating-point rounding only.
+ */
+public class EloCalculator {
+    /** The K-factor the scoreboard has always used. */
+    public static final double DEFAULT_K = 32.0;
+
+    private static final double LN10_OVER_400 = Math.log(10.0) / 400.0;
+
+    private final double kFactor;
+
+    public EloCalculator() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * @param kFactor The most rating points a single match can move.
+     */
+    public EloCalculator(double kFactor) {
+        if (!(kFactor > 0)) {
+            throw new IllegalArgumentException("K-factor must be positive: " + kFactor);
+        }
+        this.kFactor = kFactor;
+    }
+
+    public double getKFactor() {
+        return kFactor;
+    }
+
+    /**
+     * @param rating   The rating of the player.
+     * @param opponent The rating of the opponent.
+     * @return The player's expected score against the opponent, between 0 and 1.
+     */
+    public double expectedScore(double rating, double opponent) {
+        return 1.0 / (1.0 + Math.exp((opponent - rating) * LN10_OVER_400));
+    }
+
+    /**
+     * @param winner The rating of the winner before the match.
+     * @param loser  The rating of the loser before the match.
+     * @return The points the winner gains and the loser loses.
+     */
+    public double winPoints(double winner, double loser) {
+        return kFactor * expectedScore(loser, winner);
+    }
+
+    /**
+     * @param rating   The rating of the player before the match.
+     * @param opponent The rating of the opponent before the match.
+     * @return The points the player gains in a draw, negative if the player was
+     *         the favourite. The opponent gains the negation.
+     */
+    public double drawPoints(double rating, double opponent) {
+        return kFactor * (0.5 - expectedScore(rating, opponent));
+    }
+
+    /**
+     * Applies a batch of matches, in order, to an array of ratings. Each match
+     * names its two players by index into the ratings array, and a player's
+     * later matches see the rating left by the earlier ones.
+     *
+     * @param ratings  The ratings, updated in place.
+     * @param first    The index of the first player of each match.
+     * @param second   The index of the second player of each match.
+     * @param outcomes The outcome of each match: MatchBatch.FIRST_WINS,
+     *                 SECOND_WINS or DRAW.
+     * @param count    The number of matches to apply.
+     */
+    public void applyMatches(double[] ratings, int[] first, int[] second, int[] outcomes, int count) {
+        for (int i = 0; i < count; i++) {
+            int a = first[i];
+            int b = second[i];
+            double ra = ratings[a];
+            double rb = ratings[b];
+            double points;
+            if (outcomes[i] == MatchBatch.FIRST_WINS) {
+                points = winPoints(ra, rb);
+            } else if (outcomes[i] == MatchBatch.SECOND_WINS) {
+                points = -winPoints(rb, ra);
+            } else if (outcomes[i] == MatchBatch.DRAW) {
+                points = drawPoints(ra, rb);
+            } else {
+                throw new IllegalArgumentException("invalid outcome " + outcomes[i]);
+            }
+            ratings[a] = ra + points;
+            ratings[b] = rb - points;
+        }
+    }
+}
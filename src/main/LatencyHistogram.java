@@ -0,0 +1,132 @@
+package main;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of operation latencies in nanoseconds with power-of-two
+ * buckets: bucket i counts the latencies below 2^i that are at least
+ * 2^(i - 1). Percentiles are therefore estimates, reported as the upper bound
+ * of the bucket they fall in, but recording is a single striped increment, so
+ * threads that record at the same time do not contend on a shared counter.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+    private static final int BUCKETS = 64;
+
+    private final String name;
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param name The name of the operation whose latencies are recorded.
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records the latency of an operation that began at the given time, as
+     * returned by TreeMetrics.start. Does nothing if the operation began while
+     * metrics were disabled.
+     *
+     * @param start The System.nanoTime at which the operation began, or 0.
+     */
+    public void stop(long start) {
+        if (start != 0) {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public double getMeanNanos() {
+        long count = getCount();
+        return (count == 0) ? 0 : (double) total.sum() / count;
+    }
+
+    public long getP50Nanos() {
+        return percentile(0.5);
+    }
+
+    public long getP99Nanos() {
+        return percentile(0.99);
+    }
+
+    public long getP999Nanos() {
+        return percentile(0.999);
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * Estimates a percentile as the upper bound of the bucket it falls in,
+     * capped at the largest latency recorded.
+     *
+     * @param fraction The percentile as a fraction between 0 and 1.
+     * @return The estimated latency in nanoseconds, or 0 if nothing has been
+     *         recorded.
+     */
+    public long percentile(double fraction) {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min((1L << i) - 1, getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        total.reset();
+        max.reset();
+    }
+
+    public String toString() {
+        return String.format("%s: count=%d mean=%.0fns p50=%dns p99=%dns p99.9=%dns max=%dns", name, getCount(),
+                getMeanNanos(), getP50Nanos(), getP99Nanos(), getP999Nanos(), getMaxNanos());
+    }
+}
@@ -0,0 +1,22 @@
+package main;
+
+/**
+ * The JMX view of a LatencyHistogram.
+ */
+public interface LatencyHistogramMBean {
+    String getName();
+
+    long getCount();
+
+    double getMeanNanos();
+
+    long getP50Nanos();
+
+    long getP99Nanos();
+
+    long getP999Nanos();
+
+    long getMaxNanos();
+
+    void reset();
+}
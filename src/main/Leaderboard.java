@@ -0,0 +1,55 @@
+package main;
+
+/**
+ * The operations shared by the leaderboard engines. Players are filed under a
+ * double value (normally their ELO) and ranked in decreasing order of it, so
+ * the highest value has rank 1 and players sharing a value share a rank.
+ *
+ * Updates return the leaderboard to use from then on, in the style of
+ * AVLPlayerNode, whose updates return the new root of the tree. Engines that
+ * update in place return themselves.
+ */
+public interface Leaderboard {
+
+    /**
+     * Files a player under the given value.
+     *
+     * @param newGuy The player to insert.
+     * @param value  The value to file the player under.
+     * @return The leaderboard to use from now on.
+     */
+    Leaderboard insert(Player newGuy, double value);
+
+    /**
+     * Removes one player filed under the given value.
+     *
+     * @param value The value of the player to remove.
+     * @return The leaderboard to use from now on. For AVLPlayerNode this is null
+     *         once the last player has been removed.
+     */
+    Leaderboard delete(double value);
+
+    /**
+     * @param value The value to look up.
+     * @return A player filed under the value, or null if there is none.
+     */
+    Player getPlayer(double value);
+
+    /**
+     * @param eloScore The score to rank.
+     * @return The scoreboard rank of the score, or 0 if no player has it.
+     */
+    int getRank(double eloScore);
+
+    /**
+     * @param k The 1-based scoreboard rank.
+     * @return The player at that rank, or null if k is out of range.
+     */
+    Player selectByRank(int k);
+
+    /**
+     * @return The whole scoreboard, one "%-10s %-3d %.2f" row per player under a
+     *         NAME/ID/SCORE header, in decreasing order of value.
+     */
+    String scoreboard();
+}
@@ -0,0 +1,435 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Serves a leaderboard over TCP with the command set of the ScoreKeeper driver
+ * loop. Each request is one line of space-separated tokens, and each response
+ * is one or more lines followed by an empty line:
+ * <ul>
+ * <li>A name id elo: add a player.</li>
+ * <li>D id: delete a player.</li>
+ * <li>R id: the player's rank, as in the driver loop.</li>
+ * <li>E id: the player's ELO, as in the driver loop.</li>
+ * <li>L [offset limit]: the scoreboard, or one page of it.</li>
+ * <li>M id1 id2 outcome: record a match, outcome as in MatchBatch.</li>
+ * <li>P: the ELO tree in parentheses format.</li>
+ * <li>X: close the connection.</li>
+ * </ul>
+ * Commands that change the leaderboard answer "OK" or "ERR reason".
+ *
+ * Every connection gets its own thread: a virtual thread when the runtime has
+ * them, so thousands of mostly idle clients cost little, and a pooled
+ * platform thread otherwise. Reads run on the connection threads, concurrently
+ * against the ConcurrentLeaderboard's optimistic reads. Writes are handed to a
+ * single writer thread through a queue. The writer drains whatever has queued
+ * up and applies runs of matches as one MatchBatch under one write lock, so
+ * under load the cost of the lock and of repositioning players is shared by
+ * many matches.
+ *
+ * With a MatchJournal, the writer logs every write it applies, and forces the
+ * journal once for everything it drained before answering any of it, so an
+ * "OK" is only sent once the change would survive a crash.
+ */
+public class LeaderboardServer implements Closeable {
+    private static final int MIN_PLAYERS = 3;
+    // how often a connection waiting on a write checks that the writer is still there
+    private static final long WRITER_CHECK_MILLIS = 100;
+    // queued by close to stop the writer once it has answered everything before it
+    private static final Write STOP = new Write(Write.MATCH, null, 0, 0, 0);
+
+    private final ConcurrentLeaderboard board;
+    private final MatchJournal journal;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = newConnectionExecutor();
+    private final BlockingQueue<Write> writes = new LinkedBlockingQueue<>();
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    /**
+     * Starts serving the leaderboard.
+     *
+     * @param board The leaderboard to serve.
+     * @param port  The port to listen on, or 0 for any free port.
+     * @throws IOException If the port cannot be bound.
+     */
+    public LeaderboardServer(ConcurrentLeaderboard board, int port) throws IOException {
+        this(board, port, null);
+    }
+
+    /**
+     * Starts serving the leaderboard, logging every write to a journal. The
+     * journal stays open when the server is closed, so the caller can write a
+     * snapshot and truncate it.
+     *
+     * @param board   The leaderboard to serve.
+     * @param port    The port to listen on, or 0 for any free port.
+     * @param journal The journal to log writes to, or null for none.
+     * @throws IOException If the port cannot be bound.
+     */
+    public LeaderboardServer(ConcurrentLeaderboard board, int port, MatchJournal journal) throws IOException {
+        this.board = board;
+        this.journal = journal;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(port));
+        acceptor = new Thread(this::acceptLoop, "leaderboard-acceptor");
+        writer = new Thread(this::writeLoop, "leaderboard-writer");
+        writer.start();
+        acceptor.start();
+    }
+
+    /**
+     * @return The port the server listens on.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections, closes the open ones and stops the writer.
+     */
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        for (Socket client : clients) {
+            client.close();
+        }
+        connections.shutdown();
+        // a sentinel rather than an interrupt, which would close the journal's channel mid-force
+        writes.add(STOP);
+        try {
+            acceptor.join();
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates an executor that runs each connection on a new virtual thread if
+     * the runtime supports them, and on a cached platform thread otherwise.
+     */
+    static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "leaderboard-connection");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket client = serverSocket.accept();
+                clients.add(client);
+                try {
+                    connections.execute(() -> serve(client));
+                } catch (RejectedExecutionException e) {
+                    // accepted just as the server closed
+                    clients.remove(client);
+                    client.close();
+                }
+            } catch (IOException e) {
+                // the server socket was closed
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try (Socket socket = client;
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                Writer out = new BufferedWriter(
+                        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] tokens = line.trim().split("\\s+");
+                if (tokens[0].equals("X")) {
+                    out.write("BYE\n\n");
+                    out.flush();
+                    break;
+                }
+                String response;
+                try {
+                    response = handle(tokens);
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    response = "ERR malformed command";
+                }
+                out.write(response);
+                if (!response.isEmpty() && !response.endsWith("\n")) {
+                    out.write('\n');
+                }
+                out.write('\n');
+                // keep pipelined requests in the buffer until they are all answered
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // the client went away or the server is closing
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    /**
+     * Answers one request. Reads are served on the calling thread, writes are
+     * queued for the writer and awaited.
+     */
+    private String handle(String[] tokens) {
+        switch (tokens[0]) {
+        case "R": {
+            int id = Integer.parseInt(tokens[1]);
+            ConcurrentLeaderboard.Ranked ranked = board.getRanked(id);
+            if (ranked == null) {
+                return "ERR no such player";
+            }
+            return String.format("ID: %d NAME: %s RANK: %d", id, ranked.getPlayer().getName(), ranked.getRank());
+        }
+        case "E": {
+            int id = Integer.parseInt(tokens[1]);
+            Player p = board.getPlayer(id);
+            if (p == null) {
+                return "ERR no such player";
+            }
+            return String.format("ID: %d NAME: %s ELO: %f", id, p.getName(), p.getELO());
+        }
+        case "L":
+            if (tokens.length >= 3) {
+                return board.scoreboard(Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]));
+            }
+            return board.scoreboard();
+        case "P":
+            return "ELO tree: " + board.treeString();
+        case "A": {
+            double elo = Double.parseDouble(tokens[3]);
+            if (!Double.isFinite(elo)) {
+                return "ERR invalid elo";
+            }
+            return submit(new Write(Write.ADD, new Player(tokens[1], Integer.parseInt(tokens[2]), elo), 0, 0, 0));
+        }
+        case "D":
+            return submit(new Write(Write.DELETE, null, Integer.parseInt(tokens[1]), 0, 0));
+        case "M": {
+            int outcome = Integer.parseInt(tokens[3]);
+            if (outcome != MatchBatch.DRAW && outcome != MatchBatch.FIRST_WINS && outcome != MatchBatch.SECOND_WINS) {
+                return "ERR invalid outcome";
+            }
+            return submit(new Write(Write.MATCH, null, Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]),
+                    outcome));
+        }
+        default:
+            return "ERR invalid command";
+        }
+    }
+
+    /**
+     * Queues a write and waits for its answer. A write queued after the writer
+     * took its last batch is never answered by it, so the wait is bounded and
+     * gives up once the writer has stopped.
+     */
+    private String submit(Write write) {
+        if (!running) {
+            return "ERR server closing";
+        }
+        writes.add(write);
+        try {
+            while (true) {
+                try {
+                    return write.response.get(WRITER_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (!writer.isAlive()) {
+                        // a no-op if the writer answered after all
+                        write.response.complete("ERR server closing");
+                        return write.response.join();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERR interrupted";
+        } catch (ExecutionException e) {
+            // the writer only ever completes normally
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The single writer. Takes everything queued so far and applies it in
+     * order, with each run of consecutive matches applied as one batch, then
+     * forces the journal and answers.
+     */
+    private void writeLoop() {
+        List<Write> pending = new ArrayList<>();
+        MatchBatch batch = new MatchBatch();
+        List<Write> batched = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                pending.add(writes.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            writes.drainTo(pending);
+            stopping = pending.remove(STOP);
+            String failure = null;
+            try {
+                try {
+                    apply(pending, batch, batched);
+                } finally {
+                    batch.clear();
+                    batched.clear();
+                    if (journal != null) {
+                        journal.flush();
+                    }
+                }
+            } catch (IOException e) {
+                // the writes are on the board but might not survive a crash
+                failure = "ERR journal failed: " + e.getMessage();
+                for (Write w : pending) {
+                    w.result = null;
+                }
+            } catch (RuntimeException e) {
+                // answer whatever the failure left unanswered and carry on
+                failure = "ERR " + e;
+            }
+            for (Write w : pending) {
+                w.response.complete((w.result != null) ? w.result : failure);
+            }
+            pending.clear();
+        }
+        for (Write w : writes) {
+            w.response.complete("ERR server closing");
+        }
+    }
+
+    /**
+     * Applies and journals the drained writes in order, leaving each one's
+     * answer in its result.
+     */
+    private void apply(List<Write> pending, MatchBatch batch, List<Write> batched) throws IOException {
+        for (Write w : pending) {
+            if (w.kind == Write.MATCH) {
+                String error = checkMatch(w);
+                if (error != null) {
+                    w.result = error;
+                } else {
+                    batch.add(w.id1, w.id2, w.outcome);
+                    batched.add(w);
+                }
+                continue;
+            }
+            flushMatches(batch, batched);
+            if (w.kind == Write.ADD) {
+                if (!board.addPlayer(w.player)) {
+                    w.result = "ERR id taken";
+                    continue;
+                }
+                if (journal != null) {
+                    journal.appendAdd(w.player);
+                }
+            } else if (board.size() <= MIN_PLAYERS) {
+                w.result = "ERR cannot afford to lose any more people";
+                continue;
+            } else if (board.removePlayer(w.id1) == null) {
+                w.result = "ERR no such player";
+                continue;
+            } else if (journal != null) {
+                journal.appendDelete(w.id1);
+            }
+            w.result = "OK";
+        }
+        flushMatches(batch, batched);
+    }
+
+    /**
+     * Validates a match against the board. Only the writer changes the board,
+     * so the answer still holds when the match is applied.
+     */
+    private String checkMatch(Write w) {
+        if (w.id1 == w.id2) {
+            return "ERR a player cannot play themselves";
+        }
+        if (board.getPlayer(w.id1) == null || board.getPlayer(w.id2) == null) {
+            return "ERR no such player";
+        }
+        return null;
+    }
+
+    private void flushMatches(MatchBatch batch, List<Write> batched) throws IOException {
+        if (batch.size() == 0) {
+            return;
+        }
+        board.applyBatch(batch);
+        for (int i = 0; i < batched.size(); i++) {
+            Write w = batched.get(i);
+            if (Double.isNaN(batch.getFirstElo(i))) {
+                // checkMatch makes this unreachable, but a skipped match must not be logged
+                w.result = "ERR no such player";
+                continue;
+            }
+            if (journal != null) {
+                journal.append(w.id1, w.id2, w.outcome, batch.getFirstElo(i), batch.getSecondElo(i));
+            }
+            w.result = "OK";
+        }
+        batch.clear();
+        batched.clear();
+    }
+
+    /**
+     * A write waiting in the queue, with the future its connection waits on
+     * and the answer the writer has for it.
+     */
+    private static final class Write {
+        static final int ADD = 0;
+        static final int DELETE = 1;
+        static final int MATCH = 2;
+
+        final int kind;
+        final Player player;
+        final int id1;
+        final int id2;
+        final int outcome;
+        final CompletableFuture<String> response = new CompletableFuture<>();
+        String result;
+
+        Write(int kind, Player player, int id1, int id2, int outcome) {
+            this.kind = kind;
+            this.player = player;
+            this.id1 = id1;
+            this.id2 = id2;
+            this.outcome = outcome;
+        }
+    }
+}
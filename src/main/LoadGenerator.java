@@ -0,0 +1,233 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A load-generating client for LeaderboardServer. Each simulated client holds
+ * one connection and sends requests back to back, each one waiting for the
+ * previous response: rank and ELO lookups, and matches between random players
+ * in the given share of requests. Players are assumed to have IDs 0 to
+ * players - 1.
+ *
+ * Usage: LoadGenerator host port clients seconds players writePercent
+ */
+public class LoadGenerator {
+    // latencies kept per client for the percentiles, by reservoir sampling
+    private static final int SAMPLES_PER_CLIENT = 4096;
+    private static final String USAGE = "usage: LoadGenerator host port clients seconds players writePercent";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 6) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        Report report = run(args[0], Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                Integer.parseInt(args[3]) * 1000L, Integer.parseInt(args[4]), Integer.parseInt(args[5]));
+        System.out.println(report);
+    }
+
+    /**
+     * Runs the load and waits for every client to finish.
+     *
+     * @param host         The server host.
+     * @param port         The server port.
+     * @param clients      The number of concurrent connections.
+     * @param millis       How long to send requests for.
+     * @param players      The number of player IDs to pick from.
+     * @param writePercent The share of requests that record a match.
+     * @return The combined statistics of all clients.
+     * @throws IOException If a client cannot connect or loses its connection.
+     * @throws IllegalArgumentException If there are no clients, fewer than two
+     *                                  players to pair, or writePercent is not
+     *                                  a percentage.
+     */
+    public static Report run(String host, int port, int clients, long millis, int players, int writePercent)
+            throws IOException, InterruptedException {
+        if (clients < 1) {
+            throw new IllegalArgumentException("clients must be at least 1, not " + clients + "; " + USAGE);
+        }
+        if (players < 2) {
+            throw new IllegalArgumentException("a match needs at least 2 players, not " + players + "; " + USAGE);
+        }
+        if (writePercent < 0 || writePercent > 100) {
+            throw new IllegalArgumentException("writePercent must be within 0 to 100, not " + writePercent + "; "
+                    + USAGE);
+        }
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        ExecutorService executor = LeaderboardServer.newConnectionExecutor();
+        Future<?>[] futures = new Future<?>[clients];
+        Client[] results = new Client[clients];
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            Client client = new Client(c);
+            results[c] = client;
+            futures[c] = executor.submit(() -> {
+                client.run(host, port, deadline, players, writePercent);
+                return null;
+            });
+        }
+        try {
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long requests = 0;
+        long errors = 0;
+        int sampled = 0;
+        for (Client client : results) {
+            requests += client.requests;
+            errors += client.errors;
+            sampled += client.sampled();
+        }
+        long[] latencies = new long[sampled];
+        int filled = 0;
+        for (Client client : results) {
+            System.arraycopy(client.samples, 0, latencies, filled, client.sampled());
+            filled += client.sampled();
+        }
+        Arrays.sort(latencies);
+        return new Report(clients, requests, errors, elapsed, percentile(latencies, 0.50),
+                percentile(latencies, 0.99));
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return (sorted.length == 0) ? 0 : sorted[(int) Math.min(sorted.length - 1, (long) (p * sorted.length))];
+    }
+
+    /**
+     * One simulated client and its counters.
+     */
+    private static final class Client {
+        final long[] samples = new long[SAMPLES_PER_CLIENT];
+        final SplittableRandom random;
+        long requests;
+        long errors;
+
+        Client(int seed) {
+            random = new SplittableRandom(seed);
+        }
+
+        int sampled() {
+            return (int) Math.min(requests, SAMPLES_PER_CLIENT);
+        }
+
+        void run(String host, int port, long deadline, int players, int writePercent) throws IOException {
+            try (Socket socket = new Socket(host, port);
+                    BufferedReader in = new BufferedReader(
+                            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    Writer out = new BufferedWriter(
+                            new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+                socket.setTcpNoDelay(true);
+                while (System.nanoTime() < deadline) {
+                    int id = random.nextInt(players);
+                    String request;
+                    if (random.nextInt(100) < writePercent) {
+                        int other = (id + 1 + random.nextInt(players - 1)) % players;
+                        request = "M " + id + " " + other + " " + random.nextInt(3);
+                    } else {
+                        request = (random.nextBoolean() ? "R " : "E ") + id;
+                    }
+                    long sent = System.nanoTime();
+                    out.write(request);
+                    out.write('\n');
+                    out.flush();
+                    boolean error = false;
+                    String line = in.readLine();
+                    while (line != null && !line.isEmpty()) {
+                        error |= line.startsWith("ERR");
+                        line = in.readLine();
+                    }
+                    if (line == null) {
+                        throw new IOException("server closed the connection");
+                    }
+                    record(System.nanoTime() - sent);
+                    if (error) {
+                        errors++;
+                    }
+                }
+                out.write("X\n");
+                out.flush();
+            }
+        }
+
+        private void record(long latency) {
+            requests++;
+            if (requests <= SAMPLES_PER_CLIENT) {
+                samples[(int) requests - 1] = latency;
+            } else {
+                long slot = random.nextLong(requests);
+                if (slot < SAMPLES_PER_CLIENT) {
+                    samples[(int) slot] = latency;
+                }
+            }
+        }
+    }
+
+    /**
+     * The combined statistics of a load run.
+     */
+    public static class Report {
+        private final int clients;
+        private final long requests;
+        private final long errors;
+        private final long nanos;
+        private final long p50;
+        private final long p99;
+
+        Report(int clients, long requests, long errors, long nanos, long p50, long p99) {
+            this.clients = clients;
+            this.requests = requests;
+            this.errors = errors;
+            this.nanos = nanos;
+            this.p50 = p50;
+            this.p99 = p99;
+        }
+
+        /**
+         * @return The number of requests answered.
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * @return The number of requests answered with an error.
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return The number of requests answered per second.
+         */
+        public double getRequestsPerSecond() {
+            return requests * 1e9 / nanos;
+        }
+
+        public String toString() {
+            return String.format("%d clients: %d requests, %d errors, %.0f requests/s, p50 %.1f us, p99 %.1f us",
+                    clients, requests, errors, getRequestsPerSecond(), p50 / 1e3, p99 / 1e3);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package main;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An ordered batch of match results that are applied to the leaderboard
+ * together. The Elo updates are applied in the order the matches were added,
+ * but each player's node in the ELO tree is repositioned only once, from the
+ * score it had before the batch to the score it has after it, no matter how
+ * many games the player played in the batch.
+ */
+public class MatchBatch {
+    /** Outcome code for a draw, as entered in the driver loop. */
+    public static final int DRAW = 0;
+    /** Outcome code for a win by the first player, as entered in the driver loop. */
+    public static final int FIRST_WINS = 1;
+    /** Outcome code for a win by the second player, as entered in the driver loop. */
+    public static final int SECOND_WINS = 2;
+
+    // a batch that moves more than this share of all players rebuilds the tree
+    private static final int REBUILD_RATIO = 8;
+    // smaller boards are always updated node by node, a rebuild would move every node for a few matches
+    private static final int MIN_REBUILD_PLAYERS = 64;
+    // the order of the ELO tree: by score, and among equal scores by decreasing ID
+    private static final Comparator<Player> TREE_ORDER = Comparator.comparingDouble(Player::getELO)
+            .thenComparing(Comparator.comparingInt(Player::getID).reversed());
+
+    private int[] firstIds;
+    private int[] secondIds;
+    private int[] outcomes;
+    // the ELOs each match left its players with, filled in by apply
+    private double[] firstElos;
+    private double[] secondElos;
+    private int count;
+
+    public MatchBatch() {
+        this(16);
+    }
+
+    /**
+     * @param capacity The number of matches to allocate room for.
+     */
+    public MatchBatch(int capacity) {
+        capacity = Math.max(capacity, 1);
+        firstIds = new int[capacity];
+        secondIds = new int[capacity];
+        outcomes = new int[capacity];
+        firstElos = new double[capacity];
+        secondElos = new double[capacity];
+    }
+
+    /**
+     * Appends a match result to the batch.
+     *
+     * @param id1     The ID of the first player.
+     * @param id2     The ID of the second player.
+     * @param outcome FIRST_WINS, SECOND_WINS or DRAW.
+     */
+    public void add(int id1, int id2, int outcome) {
+        if (outcome != DRAW && outcome != FIRST_WINS && outcome != SECOND_WINS) {
+            throw new IllegalArgumentException("invalid outcome " + outcome);
+        }
+        if (count == outcomes.length) {
+            firstIds = Arrays.copyOf(firstIds, count << 1);
+            secondIds = Arrays.copyOf(secondIds, count << 1);
+            outcomes = Arrays.copyOf(outcomes, count << 1);
+            firstElos = Arrays.copyOf(firstElos, count << 1);
+            secondElos = Arrays.copyOf(secondElos, count << 1);
+        }
+        firstIds[count] = id1;
+        firstElos[count] = Double.NaN;
+        secondElos[count] = Double.NaN;
+        secondIds[count] = id2;
+        outcomes[count] = outcome;
+        count++;
+    }
+
+    /**
+     * @return The number of matches in the batch.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param i The index of a match, in the order the matches were added.
+     * @return The first player's ELO right after that match when the batch was
+     *         last applied, or NaN if the match was skipped or the batch has not
+     *         been applied.
+     */
+    public double getFirstElo(int i) {
+        checkIndex(i);
+        return firstElos[i];
+    }
+
+    /**
+     * @param i The index of a match, in the order the matches were added.
+     * @return The second player's ELO right after that match, like
+     *         getFirstElo.
+     */
+    public double getSecondElo(int i) {
+        checkIndex(i);
+        return secondElos[i];
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("match " + i + " of " + count);
+        }
+    }
+
+    /**
+     * Empties the batch so it can be reused.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Applies every match in the batch, in order, and then repositions each
+     * player whose score changed once in the ELO tree. If the batch moved more
+     * than an eighth of the players of a board of at least 64, the tree is
+     * rebuilt from its nearly sorted players instead, which is cheaper than
+     * that many separate moves.
+     * Matches that name an unknown ID, or the same player twice, are skipped.
+     * The ELOs each match left its players with can be read back afterwards
+     * with getFirstElo and getSecondElo, for instance to journal the matches.
+     *
+     * @param eloTree The root of the ELO tree.
+     * @param idIndex The index used to look up players by ID.
+     * @return The new root of the ELO tree and statistics for the batch.
+     */
+    public Result apply(AVLPlayerNode eloTree, PlayerIndex idIndex) {
+        return apply(eloTree, idIndex, null);
+    }
+
+    /**
+     * Applies every match in the batch like apply(eloTree, idIndex), and
+     * publishes a RankChange for every player whose scoreboard position
+     * changed. The players are moved one at a time, never by a rebuild, so
+     * each event describes one move from a consistent scoreboard.
+     *
+     * @param eloTree The root of the ELO tree.
+     * @param idIndex The index used to look up players by ID.
+     * @param feed    Where to publish the rank changes, or null for none.
+     * @return The new root of the ELO tree and statistics for the batch.
+     */
+    public Result apply(AVLPlayerNode eloTree, PlayerIndex idIndex, RankFeed feed) {
+        Player[] touched = new Player[2 * count];
+        double[] oldElos = new double[2 * count];
+        PlayerIndex seen = new PlayerIndex(2 * count);
+        int touchedCount = 0;
+        int skipped = 0;
+
+        for (int i = 0; i < count; i++) {
+            Player p1 = idIndex.get(firstIds[i]);
+            Player p2 = idIndex.get(secondIds[i]);
+            if (p1 == null || p2 == null || p1 == p2) {
+                firstElos[i] = Double.NaN;
+                secondElos[i] = Double.NaN;
+                skipped++;
+                continue;
+            }
+            if (seen.put(p1) == null) {
+                touched[touchedCount] = p1;
+                oldElos[touchedCount++] = p1.getELO();
+            }
+            if (seen.put(p2) == null) {
+                touched[touchedCount] = p2;
+                oldElos[touchedCount++] = p2.getELO();
+            }
+            if (outcomes[i] == FIRST_WINS) {
+                p1.logVictory(p2);
+            } else if (outcomes[i] == SECOND_WINS) {
+                p2.logVictory(p1);
+            } else {
+                p1.stalemate(p2);
+            }
+            firstElos[i] = p1.getELO();
+            secondElos[i] = p2.getELO();
+        }
+
+        int moved = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            if (touched[i].getELO() != oldElos[i]) {
+                moved++;
+            }
+        }
+        boolean rebuilt = feed == null && idIndex.size() >= MIN_REBUILD_PLAYERS
+                && moved > idIndex.size() / REBUILD_RATIO;
+        if (rebuilt) {
+            // the players are still listed in their old order, which is
+            // nearly sorted by the new scores, so the merge sort has little to do
+            Player[] sorted = eloTree.toSortedArray();
+            Arrays.sort(sorted, TREE_ORDER);
+            double[] values = new double[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                values[i] = sorted[i].getELO();
+            }
+            eloTree = AVLPlayerNode.fromSorted(sorted, values);
+        } else {
+            for (int i = 0; i < touchedCount; i++) {
+                double newElo = touched[i].getELO();
+                if (newElo != oldElos[i]) {
+                    int oldRank = (feed == null) ? 0 : eloTree.rankOf(touched[i], oldElos[i]);
+                    eloTree = eloTree.updateScore(touched[i], oldElos[i], newElo);
+                    if (feed != null) {
+                        int newRank = eloTree.rankOf(touched[i], newElo);
+                        if (newRank != oldRank) {
+                            feed.publish(new RankChange(touched[i].getID(), oldRank, newRank, idIndex.size()));
+                        }
+                    }
+                }
+            }
+        }
+        return new Result(eloTree, count - skipped, skipped, touchedCount, rebuilt ? idIndex.size() : moved, rebuilt);
+    }
+
+    /**
+     * The outcome of applying a batch: the new root of the ELO tree and
+     * per-batch statistics.
+     */
+    public static class Result {
+        private final AVLPlayerNode tree;
+        private final int matchesApplied;
+        private final int matchesSkipped;
+        private final int playersTouched;
+        private final int nodesMoved;
+        private final boolean rebuilt;
+
+        Result(AVLPlayerNode tree, int matchesApplied, int matchesSkipped, int playersTouched, int nodesMoved,
+                boolean rebuilt) {
+            this.tree = tree;
+            this.matchesApplied = matchesApplied;
+            this.matchesSkipped = matchesSkipped;
+            this.playersTouched = playersTouched;
+            this.nodesMoved = nodesMoved;
+            this.rebuilt = rebuilt;
+        }
+
+        public AVLPlayerNode getTree() {
+            return tree;
+        }
+
+        public int getMatchesApplied() {
+            return matchesApplied;
+        }
+
+        public int getMatchesSkipped() {
+            return matchesSkipped;
+        }
+
+        /**
+         * @return The number of distinct players that played in the batch.
+         */
+        public int getPlayersTouched() {
+            return playersTouched;
+        }
+
+        /**
+         * @return The number of nodes repositioned in the ELO tree: one per
+         *         player whose score changed, or every node if the tree was
+         *         rebuilt.
+         */
+        public int getNodesMoved() {
+            return nodesMoved;
+        }
+
+        /**
+         * @return Whether the tree was rebuilt instead of moving the players
+         *         one at a time.
+         */
+        public boolean isRebuilt() {
+            return rebuilt;
+        }
+    }
+}
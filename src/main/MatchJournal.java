@@ -0,0 +1,636 @@
+package main;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only write-ahead journal of the changes made to a leaderboard, so
+ * that everything done since the last PlayerSnapshot can be replayed after a
+ * crash. Each match is logged with both player IDs, the outcome and the ELOs
+ * it left the players with; each added player with their ID, ELO and name;
+ * each deleted player with their ID. Replay applies them in the order they
+ * were logged.
+ *
+ * Appends go to an in-memory buffer. How often the buffer is written out and
+ * forced to disk is set by the durability mode:
+ * <ul>
+ * <li>PER_EVENT: every append returns only once its record is on disk.</li>
+ * <li>EVERY_EVENTS: every n-th append forces the journal, so a crash loses at
+ * most the last n - 1 matches.</li>
+ * <li>EVERY_MILLIS: a background thread forces the journal every n
+ * milliseconds.</li>
+ * <li>ON_FLUSH: appends are only forced by flush(), for a caller that groups
+ * its own commits, such as a single writer that answers its clients once a
+ * whole run of writes is on disk.</li>
+ * </ul>
+ * Forcing uses group commit: one thread writes and forces everything appended
+ * so far while the others wait for it, so threads that append at the same
+ * time share a single fsync instead of queueing for one each.
+ *
+ * Records have a fixed size and carry a CRC32C checksum. A record torn by a
+ * crash fails its checksum and ends the journal there; opening the journal
+ * cuts such a tail off before appending.
+ */
+public class MatchJournal implements Closeable {
+    /** How often appended records are forced to disk. */
+    public enum Durability {
+        PER_EVENT, EVERY_EVENTS, EVERY_MILLIS, ON_FLUSH
+    }
+
+    private static final int MAGIC = 0x41564C4A; // "AVLJ"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 8;
+    // record types, named after the ScoreKeeper commands
+    private static final byte MATCH = 'M';
+    private static final byte ADD = 'A';
+    private static final byte DELETE = 'D';
+    // the type, two IDs, the outcome, two ELOs and the checksum
+    private static final int MATCH_BYTES = 1 + 4 + 4 + 1 + 8 + 8 + 4;
+    // the type, the ID, the ELO, the name length and the checksum, before the name
+    private static final int ADD_BYTES = 1 + 4 + 8 + 2 + 4;
+    // the type, the ID and the checksum
+    private static final int DELETE_BYTES = 1 + 4 + 4;
+    private static final int MAX_NAME_BYTES = 0xFFFF;
+    // room for the largest record
+    private static final int BUFFER_BYTES = MATCH_BYTES * 4096;
+    private static final int REPLAY_BATCH = 1 << 20;
+
+    private final FileChannel channel;
+    private final Durability durability;
+    private final int interval;
+    private final ScheduledExecutorService flusher;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer active = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private ByteBuffer spare = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private long appended;
+    private long durable;
+    private boolean flushing;
+    private IOException failure;
+    private long syncs;
+
+    /**
+     * Opens a journal for appending, creating it if needed. A torn record at
+     * the end of an existing journal is cut off.
+     *
+     * @param file       The journal file.
+     * @param durability How often appends are forced to disk.
+     * @param interval   The number of events for EVERY_EVENTS or of
+     *                   milliseconds for EVERY_MILLIS; ignored otherwise.
+     * @throws IOException If the file cannot be opened or is not a journal.
+     */
+    public MatchJournal(Path file, Durability durability, int interval) throws IOException {
+        if ((durability == Durability.EVERY_EVENTS || durability == Durability.EVERY_MILLIS) && interval < 1) {
+            throw new IllegalArgumentException("interval must be positive: " + interval);
+        }
+        this.durability = durability;
+        this.interval = interval;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                writeFully(header);
+                channel.force(false);
+            } else {
+                channel.truncate(readRecords(channel, null));
+            }
+            channel.position(channel.size());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (durability == Durability.EVERY_MILLIS) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "match-journal-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Logs one match. Depending on the durability mode, this may wait for the
+     * record, and every record appended before it, to reach the disk.
+     *
+     * @param id1     The ID of the first player.
+     * @param id2     The ID of the second player.
+     * @param outcome MatchBatch.FIRST_WINS, SECOND_WINS or DRAW.
+     * @param elo1    The first player's ELO after the match.
+     * @param elo2    The second player's ELO after the match.
+     * @throws IOException If the journal could not be written.
+     */
+    public void append(int id1, int id2, int outcome, double elo1, double elo2) throws IOException {
+        long seq;
+        reserve(MATCH_BYTES);
+        try {
+            int start = active.position();
+            active.put(MATCH).putInt(id1).putInt(id2).put((byte) outcome).putDouble(elo1).putDouble(elo2);
+            seq = seal(start);
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(seq);
+    }
+
+    /**
+     * Logs a player joining the leaderboard, with the same durability as a
+     * match.
+     *
+     * @param player The player added.
+     * @throws IOException If the journal could not be written.
+     */
+    public void appendAdd(Player player) throws IOException {
+        byte[] name = player.getName().getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("name of player " + player.getID() + " is too long");
+        }
+        long seq;
+        reserve(ADD_BYTES + name.length);
+        try {
+            int start = active.position();
+            active.put(ADD).putInt(player.getID()).putDouble(player.getELO()).putShort((short) name.length)
+                    .put(name);
+            seq = seal(start);
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(seq);
+    }
+
+    /**
+     * Logs a player leaving the leaderboard, with the same durability as a
+     * match.
+     *
+     * @param id The ID of the player deleted.
+     * @throws IOException If the journal could not be written.
+     */
+    public void appendDelete(int id) throws IOException {
+        long seq;
+        reserve(DELETE_BYTES);
+        try {
+            int start = active.position();
+            active.put(DELETE).putInt(id);
+            seq = seal(start);
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(seq);
+    }
+
+    /**
+     * Returns holding the lock, with room in the active buffer for a record of
+     * the given size. A full buffer is written out first.
+     */
+    private void reserve(int bytes) throws IOException {
+        while (true) {
+            long pending;
+            boolean room = false;
+            lock.lock();
+            try {
+                checkFailure();
+                room = active.remaining() >= bytes;
+                pending = appended;
+            } finally {
+                if (!room) {
+                    lock.unlock();
+                }
+            }
+            if (room) {
+                return;
+            }
+            syncTo(pending);
+        }
+    }
+
+    /**
+     * Appends the checksum of the record that starts at the given position of
+     * the active buffer. Must be called under the lock.
+     *
+     * @return The sequence number of the record.
+     */
+    private long seal(int start) {
+        int end = active.position();
+        crc.reset();
+        crc.update(active.limit(end).position(start));
+        active.limit(active.capacity());
+        active.putInt((int) crc.getValue());
+        return ++appended;
+    }
+
+    /**
+     * Waits for a record to reach the disk if the durability mode asks for it.
+     */
+    private void awaitDurable(long seq) throws IOException {
+        if (durability == Durability.PER_EVENT || (durability == Durability.EVERY_EVENTS && seq % interval == 0)) {
+            syncTo(seq);
+        }
+    }
+
+    /**
+     * Writes every record appended so far and forces it to disk.
+     *
+     * @throws IOException If the journal could not be written.
+     */
+    public void flush() throws IOException {
+        long seq;
+        lock.lock();
+        try {
+            seq = appended;
+        } finally {
+            lock.unlock();
+        }
+        syncTo(seq);
+    }
+
+    /**
+     * Empties the journal, typically right after a snapshot has been written
+     * that already includes every logged change.
+     *
+     * @throws IOException If the journal could not be truncated.
+     */
+    public void truncate() throws IOException {
+        flush();
+        lock.lock();
+        try {
+            while (flushing) {
+                flushed.awaitUninterruptibly();
+            }
+            channel.truncate(HEADER_BYTES);
+            channel.position(HEADER_BYTES);
+            channel.force(false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of records appended since the journal was opened.
+     */
+    public long getAppended() {
+        lock.lock();
+        try {
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of times the journal was forced to disk. Under group
+     *         commit this is usually far below the number of appends.
+     */
+    public long getSyncs() {
+        lock.lock();
+        try {
+            return syncs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces every appended record to disk and closes the journal.
+     */
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Waits until every record up to the given sequence number is on disk. If
+     * no other thread is writing, this thread writes and forces all records
+     * appended so far, including those of threads waiting behind it.
+     */
+    private void syncTo(long seq) throws IOException {
+        lock.lock();
+        try {
+            while (durable < seq) {
+                checkFailure();
+                if (flushing) {
+                    flushed.awaitUninterruptibly();
+                    continue;
+                }
+                flushing = true;
+                ByteBuffer batch = active;
+                active = spare;
+                spare = batch;
+                long batchEnd = appended;
+                lock.unlock();
+                try {
+                    batch.flip();
+                    writeFully(batch);
+                    channel.force(false);
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    batch.clear();
+                    lock.lock();
+                    flushing = false;
+                    if (failure == null) {
+                        durable = batchEnd;
+                        syncs++;
+                    }
+                    flushed.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            // recorded in failure, the next append reports it
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("match journal failed", failure);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Replays a journal on top of the leaderboard it was written against,
+     * usually one just loaded from a snapshot. Runs of matches are fed through
+     * MatchBatch, so each batch moves every player it touches only once in
+     * the ELO tree. After each batch, the recomputed ELOs are checked against
+     * the ones the journal recorded. An added or deleted player ends the
+     * current batch and is applied to the tree and the index in its place.
+     *
+     * @param file    The journal file.
+     * @param eloTree The root of the ELO tree, or null if it is empty.
+     * @param idIndex The ID index of the same players; it is updated in place.
+     * @return The replayed tree and statistics.
+     * @throws IOException If the journal cannot be read, or does not match the
+     *                     leaderboard.
+     */
+    public static Replay replay(Path file, AVLPlayerNode eloTree, PlayerIndex idIndex) throws IOException {
+        long start = System.nanoTime();
+        Replayer replayer = new Replayer(eloTree, idIndex);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            readRecords(in, replayer);
+        }
+        replayer.applyBatch();
+        return new Replay(replayer.eloTree, replayer.matches, replayer.adds, replayer.deletes,
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Checks the header and reads records until the end of the file or the
+     * first torn record, handing each one to the visitor if there is one.
+     *
+     * @return The length of the valid part of the journal.
+     */
+    private static long readRecords(FileChannel in, Replayer visitor) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        in.position(0);
+        buffer.flip();
+        if (!fill(in, buffer, HEADER_BYTES) || buffer.getInt() != MAGIC) {
+            throw new IOException("not a match journal");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported journal version " + version);
+        }
+        CRC32C check = new CRC32C();
+        byte[] name = new byte[64];
+        long valid = HEADER_BYTES;
+        while (fill(in, buffer, 1)) {
+            int start = buffer.position();
+            byte type = buffer.get(start);
+            int length;
+            if (type == MATCH) {
+                length = MATCH_BYTES;
+            } else if (type == DELETE) {
+                length = DELETE_BYTES;
+            } else if (type == ADD && fill(in, buffer, ADD_BYTES)) {
+                start = buffer.position();
+                length = ADD_BYTES + (buffer.getShort(start + ADD_BYTES - 6) & 0xFFFF);
+            } else {
+                // an unknown type is the start of a torn record
+                return valid;
+            }
+            if (!fill(in, buffer, length)) {
+                return valid;
+            }
+            start = buffer.position();
+            int limit = buffer.limit();
+            check.reset();
+            check.update(buffer.limit(start + length - 4));
+            buffer.limit(limit).position(start + length - 4);
+            if (buffer.getInt() != (int) check.getValue()) {
+                return valid;
+            }
+            if (visitor != null) {
+                buffer.position(start + 1);
+                if (type == MATCH) {
+                    visitor.match(buffer.getInt(), buffer.getInt(), buffer.get(), buffer.getDouble(),
+                            buffer.getDouble());
+                } else if (type == ADD) {
+                    int id = buffer.getInt();
+                    double elo = buffer.getDouble();
+                    int nameLength = buffer.getShort() & 0xFFFF;
+                    if (nameLength > name.length) {
+                        name = new byte[Math.max(nameLength, name.length * 2)];
+                    }
+                    buffer.get(name, 0, nameLength);
+                    visitor.add(new Player(new String(name, 0, nameLength, StandardCharsets.UTF_8), id, elo));
+                } else {
+                    visitor.delete(buffer.getInt());
+                }
+            }
+            buffer.position(start + length);
+            valid += length;
+        }
+        return valid;
+    }
+
+    /**
+     * Reads until the buffer, which is in read mode, has at least the given
+     * number of bytes remaining.
+     *
+     * @return false if the file ends first.
+     */
+    private static boolean fill(FileChannel in, ByteBuffer buffer, int bytes) throws IOException {
+        while (buffer.remaining() < bytes) {
+            buffer.compact();
+            int read = in.read(buffer);
+            buffer.flip();
+            if (read < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Feeds journal records into match batches and checks the results.
+     */
+    private static final class Replayer {
+        private AVLPlayerNode eloTree;
+        private final PlayerIndex idIndex;
+        private final MatchBatch batch = new MatchBatch(REPLAY_BATCH);
+        // the players of the current batch, at the ELO they should end it with
+        private PlayerIndex expected = new PlayerIndex();
+        // their IDs, so they can be checked without walking the index
+        private int[] expectedIds = new int[1024];
+        private int expectedCount;
+        private long matches;
+        private long adds;
+        private long deletes;
+
+        Replayer(AVLPlayerNode eloTree, PlayerIndex idIndex) {
+            this.eloTree = eloTree;
+            this.idIndex = idIndex;
+        }
+
+        void match(int id1, int id2, int outcome, double elo1, double elo2) throws IOException {
+            try {
+                batch.add(id1, id2, outcome);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("corrupt journal record", e);
+            }
+            expect(id1, elo1);
+            expect(id2, elo2);
+            if (batch.size() == REPLAY_BATCH) {
+                applyBatch();
+            }
+        }
+
+        void add(Player p) throws IOException {
+            applyBatch();
+            if (idIndex.get(p.getID()) != null) {
+                throw new IOException("journal adds player " + p.getID() + ", who is already on the leaderboard");
+            }
+            idIndex.put(p);
+            eloTree = (eloTree == null) ? new AVLPlayerNode(p, p.getELO()) : eloTree.insert(p, p.getELO());
+            adds++;
+        }
+
+        void delete(int id) throws IOException {
+            applyBatch();
+            Player p = idIndex.remove(id);
+            if (p == null) {
+                throw new IOException("journal deletes player " + id + ", who is not on the leaderboard");
+            }
+            eloTree = eloTree.delete(p, p.getELO());
+            deletes++;
+        }
+
+        void applyBatch() throws IOException {
+            if (batch.size() == 0) {
+                return;
+            }
+            MatchBatch.Result result = batch.apply(eloTree, idIndex);
+            eloTree = result.getTree();
+            matches += result.getMatchesApplied();
+            for (int i = 0; i < expectedCount; i++) {
+                int id = expectedIds[i];
+                Player p = idIndex.get(id);
+                if (p != null && p.getELO() != expected.get(id).getELO()) {
+                    throw new IOException("journal does not match the leaderboard at player " + id);
+                }
+            }
+            batch.clear();
+            expected = new PlayerIndex();
+            expectedCount = 0;
+        }
+
+        private void expect(int id, double elo) {
+            if (expected.put(new Player(null, id, elo)) == null) {
+                if (expectedCount == expectedIds.length) {
+                    expectedIds = Arrays.copyOf(expectedIds, expectedCount << 1);
+                }
+                expectedIds[expectedCount++] = id;
+            }
+        }
+    }
+
+    /**
+     * The outcome of a replay.
+     */
+    public static class Replay {
+        private final AVLPlayerNode tree;
+        private final long matches;
+        private final long adds;
+        private final long deletes;
+        private final long nanos;
+
+        Replay(AVLPlayerNode tree, long matches, long adds, long deletes, long nanos) {
+            this.tree = tree;
+            this.matches = matches;
+            this.adds = adds;
+            this.deletes = deletes;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return The root of the ELO tree after the replay.
+         */
+        public AVLPlayerNode getTree() {
+            return tree;
+        }
+
+        /**
+         * @return The number of matches replayed.
+         */
+        public long getMatches() {
+            return matches;
+        }
+
+        /**
+         * @return The number of players added.
+         */
+        public long getAdds() {
+            return adds;
+        }
+
+        /**
+         * @return The number of players deleted.
+         */
+        public long getDeletes() {
+            return deletes;
+        }
+
+        /**
+         * @return The replay rate in matches per second.
+         */
+        public double getMatchesPerSecond() {
+            return (nanos == 0) ? 0 : matches * 1e9 / nanos;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * A matchmaking queue that pairs each player with the waiting player closest
+ * in rating. Waiting players are filed in an AVLPlayerNode by the ELO they
+ * had when they joined, so the closest opponent is the player's in-order
+ * predecessor or successor and is found in O(log n) instead of by scanning
+ * the queue.
+ *
+ * How far apart two players may be grows with how long they have waited: a
+ * player who has waited t seconds accepts opponents within
+ * min(maxDelta, baseDelta + deltaPerSecond * t), and a pairing is made when
+ * the distance is within the window of the player who has waited longer.
+ * A player who joins is paired at once if possible. Players whose windows
+ * have since widened enough are paired by matchWaiting, which is meant to be
+ * called periodically.
+ *
+ * All operations run under one lock, so a pairing takes both players out of
+ * the queue at once and no player is ever handed to two pairings.
+ */
+public class MatchmakingQueue {
+    private final double baseDelta;
+    private final double deltaPerSecond;
+    private final double maxDelta;
+    private final LongSupplier clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // waiting players by ID, in the order they joined
+    private final Map<Integer, Waiting> waiting = new LinkedHashMap<>();
+    private AVLPlayerNode eloTree;
+
+    /**
+     * @param baseDelta      The rating distance accepted on joining.
+     * @param deltaPerSecond How much the accepted distance grows per second
+     *                       of waiting.
+     * @param maxDelta       The largest distance ever accepted.
+     */
+    public MatchmakingQueue(double baseDelta, double deltaPerSecond, double maxDelta) {
+        this(baseDelta, deltaPerSecond, maxDelta, System::nanoTime);
+    }
+
+    /**
+     * @param baseDelta      The rating distance accepted on joining.
+     * @param deltaPerSecond How much the accepted distance grows per second
+     *                       of waiting.
+     * @param maxDelta       The largest distance ever accepted.
+     * @param clock          The time source, in nanoseconds.
+     */
+    public MatchmakingQueue(double baseDelta, double deltaPerSecond, double maxDelta, LongSupplier clock) {
+        if (!(baseDelta >= 0) || !(deltaPerSecond >= 0) || !(maxDelta >= baseDelta)) {
+            throw new IllegalArgumentException("deltas must satisfy 0 <= baseDelta <= maxDelta");
+        }
+        this.baseDelta = baseDelta;
+        this.deltaPerSecond = deltaPerSecond;
+        this.maxDelta = maxDelta;
+        this.clock = clock;
+    }
+
+    /**
+     * Puts a player in the queue, or pairs them straight away with the closest
+     * waiting player if that player is close enough.
+     *
+     * @param player The player looking for a match, filed under their current
+     *               ELO.
+     * @return The pairing, or null if the player was left waiting.
+     * @throws IllegalArgumentException If the player is already waiting or has
+     *                                  no finite ELO.
+     */
+    public Pairing join(Player player) {
+        if (!Double.isFinite(player.getELO())) {
+            throw new IllegalArgumentException("player " + player.getID() + " has no finite ELO");
+        }
+        lock.lock();
+        try {
+            if (waiting.containsKey(player.getID())) {
+                throw new IllegalArgumentException("player " + player.getID() + " is already waiting");
+            }
+            long now = clock.getAsLong();
+            Waiting joined = new Waiting(player, player.getELO(), now);
+            waiting.put(player.getID(), joined);
+            eloTree = (eloTree == null) ? new AVLPlayerNode(player, joined.elo) : eloTree.insert(player, joined.elo);
+            return tryPair(joined, now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a player out of the queue without pairing them.
+     *
+     * @param id The ID of the player.
+     * @return true if the player was waiting.
+     */
+    public boolean leave(int id) {
+        lock.lock();
+        try {
+            Waiting w = waiting.remove(id);
+            if (w == null) {
+                return false;
+            }
+            eloTree = eloTree.delete(w.player, w.elo);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Pairs every waiting player whose window has grown to reach their
+     * closest opponent, longest-waiting players first. This visits the whole
+     * queue, at O(log n) per player.
+     *
+     * @return The pairings made, in the order they were made.
+     */
+    public List<Pairing> matchWaiting() {
+        lock.lock();
+        try {
+            List<Pairing> pairings = new ArrayList<>();
+            long now = clock.getAsLong();
+            List<Waiting> queued = new ArrayList<>(waiting.values());
+            for (Waiting w : queued) {
+                if (waiting.get(w.player.getID()) != w) {
+                    // already paired in this sweep
+                    continue;
+                }
+                Pairing pairing = tryPair(w, now);
+                if (pairing != null) {
+                    pairings.add(pairing);
+                }
+            }
+            return pairings;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of players waiting.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The players waiting, in the order they joined.
+     */
+    public List<Player> getWaiting() {
+        lock.lock();
+        try {
+            List<Player> players = new ArrayList<>(waiting.size());
+            for (Waiting w : waiting.values()) {
+                players.add(w.player);
+            }
+            return players;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The rating distance a player who joined at the given time accepts now.
+     */
+    private double window(long joinedNanos, long now) {
+        double seconds = (double) (now - joinedNanos) / TimeUnit.SECONDS.toNanos(1);
+        return Math.min(maxDelta, baseDelta + deltaPerSecond * seconds);
+    }
+
+    /**
+     * Pairs a waiting player with their closest opponent if either of them
+     * has waited long enough to accept the distance, and takes both out of
+     * the queue. Must be called under the lock.
+     */
+    private Pairing tryPair(Waiting w, long now) {
+        Player nearest = eloTree.nearestNeighbor(w.player, w.elo);
+        if (nearest == null) {
+            return null;
+        }
+        Waiting opponent = waiting.get(nearest.getID());
+        double distance = Math.abs(w.elo - opponent.elo);
+        long longestJoined = Math.min(w.joinedNanos, opponent.joinedNanos);
+        if (distance > window(longestJoined, now)) {
+            return null;
+        }
+        waiting.remove(w.player.getID());
+        waiting.remove(opponent.player.getID());
+        eloTree = eloTree.delete(w.player, w.elo);
+        eloTree = (eloTree == null) ? null : eloTree.delete(opponent.player, opponent.elo);
+        Waiting first = (opponent.joinedNanos <= w.joinedNanos) ? opponent : w;
+        Waiting second = (first == w) ? opponent : w;
+        return new Pairing(first.player, second.player, distance, now - first.joinedNanos);
+    }
+
+    /**
+     * A player in the queue, with the ELO they are filed under.
+     */
+    private static final class Waiting {
+        final Player player;
+        final double elo;
+        final long joinedNanos;
+
+        Waiting(Player player, double elo, long joinedNanos) {
+            this.player = player;
+            this.elo = elo;
+            this.joinedNanos = joinedNanos;
+        }
+    }
+
+    /**
+     * Two players taken out of the queue to play each other.
+     */
+    public static final class Pairing {
+        private final Player first;
+        private final Player second;
+        private final double distance;
+        private final long waitNanos;
+
+        Pairing(Player first, Player second, double distance, long waitNanos) {
+            this.first = first;
+            this.second = second;
+            this.distance = distance;
+            this.waitNanos = waitNanos;
+        }
+
+        /**
+         * @return The player who waited longer.
+         */
+        public Player getFirst() {
+            return first;
+        }
+
+        /**
+         * @return The player who waited less.
+         */
+        public Player getSecond() {
+            return second;
+        }
+
+        /**
+         * @return The distance between their ELOs as they joined.
+         */
+        public double getDistance() {
+            return distance;
+        }
+
+        /**
+         * @return How long the first player waited, in nanoseconds.
+         */
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        public String toString() {
+            return first.getName() + " vs " + second.getName();
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package main;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A leaderboard built on an immutable, path-copying AVL tree. Every insert,
+ * delete or score update copies only the nodes on the path it changes and
+ * publishes the new root through a single atomic reference. A reader takes a
+ * Snapshot, which is just a root, and can walk it for as long as it likes
+ * without locks: writers never touch nodes that are already published, so a
+ * long export or scoreboard render neither blocks nor slows down the writers.
+ *
+ * Players are ordered on the same (value, player ID) key as AVLPlayerNode, so
+ * a specific player is found in one descent even among many equal values.
+ */
+public class PersistentLeaderboard {
+    private final AtomicReference<Node> root = new AtomicReference<>();
+
+    public PersistentLeaderboard() {
+    }
+
+    /**
+     * Creates a leaderboard holding the given players, keyed by ELO.
+     *
+     * @param players The starting players.
+     */
+    public PersistentLeaderboard(Player[] players) {
+        for (Player p : players) {
+            insert(p, p.getELO());
+        }
+    }
+
+    /**
+     * Captures the current version of the leaderboard. The snapshot never
+     * changes, however many writes happen after it is taken.
+     *
+     * @return The current snapshot.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(root.get());
+    }
+
+    /**
+     * Inserts a player under the given value and publishes the new version.
+     *
+     * @param newGuy The player to insert.
+     * @param value  The value to file the player under.
+     */
+    public void insert(Player newGuy, double value) {
+        Node current;
+        do {
+            current = root.get();
+        } while (!root.compareAndSet(current, insert(current, newGuy, value)));
+    }
+
+    /**
+     * Deletes the given player and publishes the new version.
+     *
+     * @param player The player to remove.
+     * @param value  The value the player is filed under.
+     * @return true if the player was found and removed.
+     */
+    public boolean delete(Player player, double value) {
+        Node current;
+        Node updated;
+        do {
+            current = root.get();
+            updated = delete(current, player, value);
+            if (updated == current) {
+                return false;
+            }
+        } while (!root.compareAndSet(current, updated));
+        return true;
+    }
+
+    /**
+     * Moves a player from its old value to a new one and publishes both changes
+     * as a single new version, so no reader ever sees the player missing.
+     *
+     * @param player The player whose score changed.
+     * @param oldElo The value the player is filed under.
+     * @param newElo The player's new value.
+     * @return true if the player was found and moved.
+     */
+    public boolean updateScore(Player player, double oldElo, double newElo) {
+        Node current;
+        Node updated;
+        do {
+            current = root.get();
+            updated = delete(current, player, oldElo);
+            if (updated == current) {
+                return false;
+            }
+            updated = insert(updated, player, newElo);
+        } while (!root.compareAndSet(current, updated));
+        return true;
+    }
+
+    /**
+     * A version of the leaderboard that never changes. All queries on it run
+     * without locks.
+     */
+    public static class Snapshot {
+        private final Node root;
+
+        Snapshot(Node root) {
+            this.root = root;
+        }
+
+        /**
+         * @return The number of players in this version.
+         */
+        public int size() {
+            return count(root);
+        }
+
+        /**
+         * @return The height of the tree, or -1 if it is empty.
+         */
+        public int getHeight() {
+            return height(root);
+        }
+
+        /**
+         * @param value The value to look up.
+         * @return A player filed under the value, or null if there is none.
+         */
+        public Player getPlayer(double value) {
+            Node n = root;
+            while (n != null && n.value != value) {
+                n = (value < n.value) ? n.left : n.right;
+            }
+            return (n == null) ? null : n.player;
+        }
+
+        /**
+         * @param eloScore The ELO score to rank.
+         * @return The scoreboard rank of the score, where the highest score is
+         *         rank 1, or 0 if no player has that score.
+         */
+        public int getRank(double eloScore) {
+            int greater = 0;
+            boolean found = false;
+            Node n = root;
+            while (n != null) {
+                if (eloScore < n.value) {
+                    greater += count(n.right) + 1;
+                    n = n.left;
+                } else {
+                    found |= eloScore == n.value;
+                    n = n.right;
+                }
+            }
+            return found ? greater + 1 : 0;
+        }
+
+        /**
+         * @param k The 1-based scoreboard rank.
+         * @return The player at that rank, or null if k is out of range.
+         */
+        public Player selectByRank(int k) {
+            if (k < 1 || k > count(root)) {
+                return null;
+            }
+            Node n = root;
+            while (true) {
+                int above = count(n.right);
+                if (k <= above) {
+                    n = n.right;
+                } else if (k == above + 1) {
+                    return n.player;
+                } else {
+                    k -= above + 1;
+                    n = n.left;
+                }
+            }
+        }
+
+        /**
+         * @return The whole scoreboard of this version, in the same format as
+         *         AVLPlayerNode.scoreboard().
+         */
+        public String scoreboard() {
+            return scoreboard(0, Integer.MAX_VALUE);
+        }
+
+        /**
+         * @param offset The number of top-ranked players to skip.
+         * @param limit  The maximum number of players to list.
+         * @return One page of the scoreboard of this version.
+         */
+        public String scoreboard(int offset, int limit) {
+            StringBuilder sb = new StringBuilder();
+            try {
+                writeScoreboard(sb, offset, limit);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Streams one page of the scoreboard of this version. Subtrees that lie
+         * wholly before the page are skipped using their sizes.
+         *
+         * @param out    Where to write the scoreboard.
+         * @param offset The number of top-ranked players to skip.
+         * @param limit  The maximum number of players to list.
+         * @throws IOException If writing to out fails.
+         */
+        public void writeScoreboard(Appendable out, int offset, int limit) throws IOException {
+            ScoreboardWriter writer = new ScoreboardWriter(out);
+            writer.writeHeader();
+            if (offset >= 0) {
+                writeRows(writer, root, new Cursor(offset, limit));
+            }
+            writer.flush();
+        }
+
+        /**
+         * @return The tree of this version in the parentheses format of
+         *         AVLPlayerNode.treeString().
+         */
+        public String treeString() {
+            StringBuilder sb = new StringBuilder();
+            buildTreeString(sb, root);
+            return sb.toString();
+        }
+
+        /**
+         * Writes the rows of the subtree in decreasing order, first using up the
+         * cursor's skip count and then writing until its limit runs out.
+         * Subtrees that lie wholly within the skipped part are passed over by
+         * their size.
+         */
+        private static void writeRows(ScoreboardWriter writer, Node n, Cursor cursor) throws IOException {
+            if (n == null || cursor.limit <= 0) {
+                return;
+            }
+            if (cursor.skip >= n.size) {
+                cursor.skip -= n.size;
+                return;
+            }
+            writeRows(writer, n.right, cursor);
+            if (cursor.limit <= 0) {
+                return;
+            }
+            if (cursor.skip > 0) {
+                cursor.skip--;
+            } else {
+                writer.writeRow(n.player);
+                cursor.limit--;
+            }
+            writeRows(writer, n.left, cursor);
+        }
+
+        private static void buildTreeString(StringBuilder sb, Node n) {
+            if (n == null) {
+                return;
+            }
+            sb.append("(");
+            buildTreeString(sb, n.left);
+            sb.append(n.player.getName());
+            buildTreeString(sb, n.right);
+            sb.append(")");
+        }
+    }
+
+    /**
+     * How many rows a page walk still has to skip and to write.
+     */
+    private static final class Cursor {
+        int skip;
+        int limit;
+
+        Cursor(int skip, int limit) {
+            this.skip = skip;
+            this.limit = limit;
+        }
+    }
+
+    /**
+     * An immutable tree node. Its height and subtree size are fixed when it is
+     * built.
+     */
+    static final class Node {
+        final Player player;
+        final double value;
+        final Node left;
+        final Node right;
+        final int height;
+        final int size;
+
+        Node(Player player, double value, Node left, Node right) {
+            this.player = player;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+            this.size = count(left) + count(right) + 1;
+        }
+    }
+
+    private static int height(Node n) {
+        return (n == null) ? -1 : n.height;
+    }
+
+    private static int count(Node n) {
+        return (n == null) ? 0 : n.size;
+    }
+
+    /**
+     * Compares a (value, player ID) key with the key of a node, in the order
+     * AVLPlayerNode uses: by value, then by decreasing ID.
+     */
+    private static int compareKey(double value, int id, Node n) {
+        if (value < n.value) {
+            return -1;
+        } else if (value > n.value) {
+            return 1;
+        }
+        return Integer.compare(n.player.getID(), id);
+    }
+
+    private static Node insert(Node n, Player player, double value) {
+        if (n == null) {
+            return new Node(player, value, null, null);
+        }
+        if (compareKey(value, player.getID(), n) < 0) {
+            return balance(n.player, n.value, insert(n.left, player, value), n.right);
+        }
+        return balance(n.player, n.value, n.left, insert(n.right, player, value));
+    }
+
+    /**
+     * Returns the subtree without the given player, or the very same subtree if
+     * the player is not in it.
+     */
+    private static Node delete(Node n, Player player, double value) {
+        if (n == null) {
+            return null;
+        }
+        int cmp = compareKey(value, player.getID(), n);
+        if (cmp < 0) {
+            Node left = delete(n.left, player, value);
+            return (left == n.left) ? n : balance(n.player, n.value, left, n.right);
+        }
+        if (cmp > 0 || n.player != player) {
+            Node right = delete(n.right, player, value);
+            return (right == n.right) ? n : balance(n.player, n.value, n.left, right);
+        }
+        if (n.left == null) {
+            return n.right;
+        }
+        if (n.right == null) {
+            return n.left;
+        }
+        Node pred = n.left;
+        while (pred.right != null) {
+            pred = pred.right;
+        }
+        return balance(pred.player, pred.value, removeMax(n.left), n.right);
+    }
+
+    private static Node removeMax(Node n) {
+        if (n.right == null) {
+            return n.left;
+        }
+        return balance(n.player, n.value, n.left, removeMax(n.right));
+    }
+
+    /**
+     * Builds a node over the given children, applying the single or double
+     * rotation the AVL property calls for.
+     */
+    private static Node balance(Player player, double value, Node left, Node right) {
+        int hl = height(left);
+        int hr = height(right);
+        if (hl > hr + 1) {
+            if (height(left.left) >= height(left.right)) {
+                // Left-Left case
+                return new Node(left.player, left.value, left.left, new Node(player, value, left.right, right));
+            }
+            // Left-Right case
+            Node lr = left.right;
+            return new Node(lr.player, lr.value, new Node(left.player, left.value, left.left, lr.left),
+                    new Node(player, value, lr.right, right));
+        }
+        if (hr > hl + 1) {
+            if (height(right.right) >= height(right.left)) {
+                // Right-Right case
+                return new Node(right.player, right.value, new Node(player, value, left, right.left), right.right);
+            }
+            // Right-Left case
+            Node rl = right.left;
+            return new Node(rl.player, rl.value, new Node(player, value, left, rl.left),
+                    new Node(right.player, right.value, rl.right, right.right));
+        }
+        return new Node(player, value, left, right);
+    }
+}
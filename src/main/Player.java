@@ -7,6 +7,8 @@ package main;
  *
  */
 public class Player {
+    private static final EloCalculator CALCULATOR=new EloCalculator();
+
     private String name;
     private int id;
     private double ELO;
@@ -37,14 +39,9 @@ public class Player {
     }
     
     private double logDefeat(Player victoriousPlayer) {
-		double theirELO=victoriousPlayer.getELO();
-		theirELO=Math.pow(10.0,theirELO/400.0);
-		double myELO=Math.pow(10.0,this.ELO/400.0);
-		double totalSkill=myELO+theirELO;
-		double myExp=myELO/totalSkill;
-		double theirExp=theirELO/totalSkill;
-		this.ELO-=32.0*myExp;
-		return 32.0*(1.0-theirExp);
+		double points=CALCULATOR.winPoints(victoriousPlayer.getELO(),this.ELO);
+		this.ELO-=points;
+		return points;
     }
 
     public void stalemate(Player worthyAdversary) {
@@ -52,15 +49,9 @@ public class Player {
     }
 
     public double internalStalemate(Player worthyAdversary) {
-		double theirELO=worthyAdversary.getELO();
-		theirELO=Math.pow(10.0,theirELO/400.0);
-		double myELO=Math.pow(10.0,this.ELO/400.0);
-		double totalSkill=myELO+theirELO;
-		double myExp=myELO/totalSkill;
-		double theirExp=theirELO/totalSkill;
-		this.ELO+=32.0*(0.5-myExp);
-		
-		return 32.0*(0.5-theirExp);	
+		double points=CALCULATOR.drawPoints(this.ELO,worthyAdversary.getELO());
+		this.ELO+=points;
+		return -points;
     }
 
     public boolean equals(Player person2) {
@@ -0,0 +1,151 @@
+package main;
+
+/**
+ * An open-addressing hash index from player ID to player. IDs are stored in a
+ * primitive int array next to a parallel array of players, so lookups never
+ * box the ID and there is no node object per entry. Collisions are resolved by
+ * linear probing, and removal shifts later entries of the probe run back so no
+ * tombstones are left behind.
+ */
+public class PlayerIndex {
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] ids;
+    private Player[] players;
+    private int size;
+    private int mask;
+
+    public PlayerIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates an index sized to hold the given number of players without
+     * growing.
+     *
+     * @param expected The number of players expected in the index.
+     */
+    public PlayerIndex(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expected) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Adds a player to the index under its ID, replacing any player already
+     * stored under that ID.
+     *
+     * @param player The player to add.
+     * @return The player previously stored under the same ID, or null.
+     */
+    public Player put(Player player) {
+        int id = player.getID();
+        int slot = hash(id) & mask;
+        while (players[slot] != null) {
+            if (ids[slot] == id) {
+                Player old = players[slot];
+                players[slot] = player;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        ids[slot] = id;
+        players[slot] = player;
+        if (++size > players.length * 3 / 4) {
+            resize(players.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the player with the given ID.
+     *
+     * @param id The ID to look up.
+     * @return The player with that ID, or null if there is none.
+     */
+    public Player get(int id) {
+        int slot = hash(id) & mask;
+        while (players[slot] != null) {
+            if (ids[slot] == id) {
+                return players[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Removes the player with the given ID. Entries further along the probe run
+     * are shifted back into the freed slot when their home slot allows it, so
+     * every remaining entry stays reachable from its home slot.
+     *
+     * @param id The ID to remove.
+     * @return The removed player, or null if there was no player with that ID.
+     */
+    public Player remove(int id) {
+        int slot = hash(id) & mask;
+        while (players[slot] != null && ids[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        Player removed = players[slot];
+        if (removed == null) {
+            return null;
+        }
+
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (players[next] != null) {
+            int home = hash(ids[next]) & mask;
+            // move the entry back unless its home lies cyclically in (gap, next]
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                ids[gap] = ids[next];
+                players[gap] = players[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        players[gap] = null;
+        size--;
+        return removed;
+    }
+
+    /**
+     * @return The number of players in the index.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void allocate(int capacity) {
+        ids = new int[capacity];
+        players = new Player[capacity];
+        mask = capacity - 1;
+    }
+
+    private void resize(int capacity) {
+        int[] oldIds = ids;
+        Player[] oldPlayers = players;
+        allocate(capacity);
+        for (int i = 0; i < oldPlayers.length; i++) {
+            if (oldPlayers[i] != null) {
+                int slot = hash(oldIds[i]) & mask;
+                while (players[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                ids[slot] = oldIds[i];
+                players[slot] = oldPlayers[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads sequential IDs across the table so they do not form one long
+     * probe run.
+     */
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
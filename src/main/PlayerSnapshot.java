@@ -0,0 +1,234 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A compact binary snapshot of the player table, so a large leaderboard can be
+ * restarted without re-entering or re-parsing every player.
+ *
+ * The file is a header (magic number, format version, player count) followed
+ * by one record per player: the ID as an int, the ELO as a double, and the
+ * name as an unsigned short byte length and that many UTF-8 bytes. All numbers
+ * are big-endian. Records are stored in the order of the ELO tree, by
+ * increasing ELO and, among equal ELOs, by decreasing ID, so the loader hands
+ * them straight to AVLPlayerNode.fromSorted without sorting anything.
+ *
+ * Snapshots are written through a FileChannel and read back through a
+ * memory-mapped view of the file, mapped in windows of at most
+ * MAX_WINDOW bytes so files beyond 2 GB load as well. A snapshot is never
+ * rewritten in place: the new one is written and forced to a sibling file
+ * that is then renamed over the old, so a crash mid-write leaves the previous
+ * snapshot intact.
+ */
+public class PlayerSnapshot {
+    private static final int MAGIC = 0x41564C53; // "AVLS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    // id, ELO and name length
+    private static final int RECORD_HEADER_BYTES = 14;
+    private static final int MAX_NAME_BYTES = 0xFFFF;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    private static final long MAX_WINDOW = 1L << 30;
+
+    private final Player[] players;
+    private final double[] elos;
+
+    private PlayerSnapshot(Player[] players, double[] elos) {
+        this.players = players;
+        this.elos = elos;
+    }
+
+    /**
+     * Writes the players of an ELO tree to a snapshot file, replacing any
+     * existing file.
+     *
+     * @param file    The file to write.
+     * @param eloTree The ELO tree to save.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Path file, AVLPlayerNode eloTree) throws IOException {
+        write(file, eloTree.toSortedArray());
+    }
+
+    /**
+     * Writes players to a snapshot file, replacing any existing file. The file
+     * is only replaced once the new snapshot is safely on disk, so anything
+     * that depends on the old snapshot (such as its journal) may be cleared as
+     * soon as this returns, and not before.
+     *
+     * @param file   The file to write.
+     * @param sorted The players, already in ELO tree order.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Path file, Player[] sorted) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(sorted.length);
+                for (Player p : sorted) {
+                    byte[] name = p.getName().getBytes(StandardCharsets.UTF_8);
+                    if (name.length > MAX_NAME_BYTES) {
+                        throw new IllegalArgumentException("name of player " + p.getID() + " is too long");
+                    }
+                    if (buffer.remaining() < RECORD_HEADER_BYTES + name.length) {
+                        drain(channel, buffer);
+                    }
+                    buffer.putInt(p.getID()).putDouble(p.getELO()).putShort((short) name.length).put(name);
+                }
+                drain(channel, buffer);
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        forceDirectory(file.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Forces a directory so that a rename inside it survives a crash. Not
+     * every platform can open a directory; there the rename is left to the
+     * file system.
+     */
+    private static void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories cannot be opened on this platform
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Loads a snapshot file through a memory-mapped view.
+     *
+     * @param file The file to read.
+     * @return The loaded snapshot.
+     * @throws IOException If the file cannot be read, is not a snapshot, or its
+     *                     records are truncated or out of order.
+     */
+    public static PlayerSnapshot load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES) {
+                throw new IOException("not a player snapshot: " + file);
+            }
+            long position = 0;
+            MappedByteBuffer window = map(channel, position, fileSize);
+            if (window.getInt() != MAGIC) {
+                throw new IOException("not a player snapshot: " + file);
+            }
+            int version = window.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported snapshot version " + version);
+            }
+            int count = window.getInt();
+            // every record takes at least its header, so a larger count is corrupt
+            if (count < 0 || count > (fileSize - HEADER_BYTES) / RECORD_HEADER_BYTES) {
+                throw new IOException("corrupt player count " + count + " in a snapshot of " + fileSize + " bytes");
+            }
+
+            Player[] players = new Player[count];
+            double[] elos = new double[count];
+            byte[] name = new byte[64];
+            for (int i = 0; i < count; i++) {
+                if (window.remaining() < RECORD_HEADER_BYTES) {
+                    position += window.position();
+                    window = map(channel, position, fileSize);
+                    requireRemaining(window, RECORD_HEADER_BYTES);
+                }
+                int id = window.getInt();
+                double elo = window.getDouble();
+                int length = window.getShort() & 0xFFFF;
+                if (window.remaining() < length) {
+                    position += window.position();
+                    window = map(channel, position, fileSize);
+                    requireRemaining(window, length);
+                }
+                if (length > name.length) {
+                    name = new byte[Math.max(length, name.length * 2)];
+                }
+                window.get(name, 0, length);
+                if (i > 0 && !inOrder(elos[i - 1], players[i - 1].getID(), elo, id)) {
+                    throw new IOException("snapshot records out of order at record " + i);
+                }
+                players[i] = new Player(new String(name, 0, length, StandardCharsets.UTF_8), id, elo);
+                elos[i] = elo;
+            }
+            return new PlayerSnapshot(players, elos);
+        }
+    }
+
+    /**
+     * Tells whether an open file starts like a snapshot.
+     */
+    static boolean isSnapshot(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(4);
+        return channel.read(magic, 0) == 4 && magic.getInt(0) == MAGIC;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long fileSize) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(fileSize - position, MAX_WINDOW));
+    }
+
+    private static void requireRemaining(ByteBuffer window, int bytes) throws IOException {
+        if (window.remaining() < bytes) {
+            throw new IOException("truncated player snapshot");
+        }
+    }
+
+    /**
+     * Tells whether a record may follow the previous one in ELO tree order.
+     */
+    private static boolean inOrder(double prevElo, int prevId, double elo, int id) {
+        return prevElo < elo || (prevElo == elo && prevId > id);
+    }
+
+    /**
+     * @return The number of players in the snapshot.
+     */
+    public int size() {
+        return players.length;
+    }
+
+    /**
+     * @return The players, in ELO tree order.
+     */
+    public Player[] getPlayers() {
+        return players;
+    }
+
+    /**
+     * Builds the ELO tree in linear time, without sorting.
+     *
+     * @return The ELO tree, or null if the snapshot holds no players.
+     */
+    public AVLPlayerNode buildTree() {
+        return AVLPlayerNode.fromSorted(players, elos);
+    }
+
+    /**
+     * @return An ID index over the players.
+     */
+    public PlayerIndex buildIndex() {
+        return ScoreKeeper.getIndex(players);
+    }
+}
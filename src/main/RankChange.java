@@ -0,0 +1,108 @@
+package main;
+
+/**
+ * One change to the scoreboard order: a player moved from one rank to
+ * another, joined or left, and the block of players in between shifted by
+ * one rank to make room. Ranks are scoreboard positions as in selectByRank,
+ * so they are distinct even among players who share a score.
+ *
+ * A subscriber holding the scoreboard as a list applies a change by removing
+ * the player at getOldRank (if any) and inserting them at getNewRank (if
+ * any); every other player in ranks getShiftFrom to getShiftTo, counted
+ * before the change, moves by getShift.
+ */
+public class RankChange {
+    private final int playerId;
+    private final int oldRank;
+    private final int newRank;
+    private final int shiftFrom;
+    private final int shiftTo;
+    private final int shift;
+
+    /**
+     * @param playerId   The ID of the player who moved.
+     * @param oldRank    The player's rank before the change, or 0 if they
+     *                   joined.
+     * @param newRank    The player's rank after the change, or 0 if they left.
+     * @param sizeBefore The number of players before the change.
+     */
+    public RankChange(int playerId, int oldRank, int newRank, int sizeBefore) {
+        this.playerId = playerId;
+        this.oldRank = oldRank;
+        this.newRank = newRank;
+        if (oldRank == 0) {
+            // everyone from the new rank down makes room
+            shiftFrom = newRank;
+            shiftTo = sizeBefore;
+            shift = 1;
+        } else if (newRank == 0) {
+            // everyone below closes the gap
+            shiftFrom = oldRank + 1;
+            shiftTo = sizeBefore;
+            shift = -1;
+        } else if (newRank < oldRank) {
+            shiftFrom = newRank;
+            shiftTo = oldRank - 1;
+            shift = 1;
+        } else {
+            shiftFrom = oldRank + 1;
+            shiftTo = newRank;
+            shift = (newRank == oldRank) ? 0 : -1;
+        }
+    }
+
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    /**
+     * @return The player's rank before the change, or 0 if they joined.
+     */
+    public int getOldRank() {
+        return oldRank;
+    }
+
+    /**
+     * @return The player's rank after the change, or 0 if they left.
+     */
+    public int getNewRank() {
+        return newRank;
+    }
+
+    /**
+     * @return The first rank, before the change, of the players who shifted.
+     */
+    public int getShiftFrom() {
+        return shiftFrom;
+    }
+
+    /**
+     * @return The last rank, before the change, of the players who shifted.
+     *         Less than getShiftFrom if nobody shifted.
+     */
+    public int getShiftTo() {
+        return shiftTo;
+    }
+
+    /**
+     * @return +1 if the shifted players each dropped a rank, -1 if they each
+     *         rose one, 0 if nobody shifted.
+     */
+    public int getShift() {
+        return shift;
+    }
+
+    /**
+     * @param k The number of top ranks.
+     * @return Whether the change reorders any of the top k ranks.
+     */
+    public boolean touchesTop(int k) {
+        return (oldRank != 0 && oldRank <= k) || (newRank != 0 && newRank <= k)
+                || (shiftFrom <= shiftTo && shiftFrom <= k);
+    }
+
+    public String toString() {
+        return String.format("player %d: %d -> %d, ranks %d..%d shifted by %+d", playerId, oldRank, newRank,
+                shiftFrom, shiftTo, shift);
+    }
+}
@@ -0,0 +1,236 @@
+package main;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes RankChange events to Flow subscribers, so clients can follow the
+ * scoreboard order from a stream of compact range shifts instead of polling
+ * and diffing the whole scoreboard.
+ *
+ * Every subscriber gets a buffer of a fixed capacity. Events wait there until
+ * the subscriber requests them, and are delivered on the executor, one at a
+ * time per subscriber. Publishing never blocks the leaderboard: a subscriber
+ * that lets its buffer fill up has fallen too far behind to follow the
+ * changes, so it is cut off with an IllegalStateException and has to
+ * re-read the scoreboard and subscribe again.
+ *
+ * topK gives a view of the feed that only carries the changes that reorder
+ * the top k ranks, with the same buffering.
+ */
+public class RankFeed implements Flow.Publisher<RankChange> {
+    private final Executor executor;
+    private final int capacity;
+    private final List<Feed> feeds = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates a feed with the default Flow buffer size that delivers on the
+     * common fork-join pool, or on a new thread per drain if the pool has no
+     * parallelism to offer, as SubmissionPublisher does.
+     */
+    public RankFeed() {
+        this((ForkJoinPool.getCommonPoolParallelism() > 1) ? ForkJoinPool.commonPool() : r -> new Thread(r).start(),
+                Flow.defaultBufferSize());
+    }
+
+    /**
+     * @param executor The executor that delivers events to subscribers.
+     * @param capacity The number of events each subscriber may fall behind.
+     */
+    public RankFeed(Executor executor, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    public void subscribe(Flow.Subscriber<? super RankChange> subscriber) {
+        subscribe(subscriber, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param k The number of top ranks to follow.
+     * @return A publisher of the changes that reorder the top k ranks.
+     */
+    public Flow.Publisher<RankChange> topK(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        return subscriber -> subscribe(subscriber, k);
+    }
+
+    private void subscribe(Flow.Subscriber<? super RankChange> subscriber, int k) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        Feed feed = new Feed(subscriber, k);
+        subscriber.onSubscribe(feed);
+        feeds.add(feed);
+        // a subscriber that cancelled in onSubscribe removed a feed that was not listed yet
+        if (feed.isCancelled()) {
+            feeds.remove(feed);
+        }
+    }
+
+    /**
+     * @return Whether anyone is subscribed, so that callers can skip working
+     *         out events nobody will receive.
+     */
+    public boolean hasSubscribers() {
+        return !feeds.isEmpty();
+    }
+
+    /**
+     * Hands an event to every subscriber it concerns. Never blocks.
+     *
+     * @param change The event.
+     */
+    public void publish(RankChange change) {
+        for (Feed feed : feeds) {
+            if (change.touchesTop(feed.k)) {
+                feed.offer(change);
+            }
+        }
+    }
+
+    /**
+     * Completes every subscription once the events already published have
+     * been delivered.
+     */
+    public void close() {
+        for (Feed feed : feeds) {
+            feed.complete();
+        }
+    }
+
+    /**
+     * One subscription: its buffer, its outstanding demand, and the drain
+     * loop that delivers to it. The work-in-progress counter makes sure only
+     * one drain runs at a time, so signals to a subscriber never overlap.
+     */
+    private final class Feed implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super RankChange> subscriber;
+        private final int k;
+        private final ArrayDeque<RankChange> buffer = new ArrayDeque<>();
+        private final AtomicInteger wip = new AtomicInteger();
+        private long demand;
+        private boolean cancelled;
+        private boolean completed;
+        private Throwable failure;
+
+        Feed(Flow.Subscriber<? super RankChange> subscriber, int k) {
+            this.subscriber = subscriber;
+            this.k = k;
+        }
+
+        void offer(RankChange change) {
+            synchronized (this) {
+                if (cancelled || completed || failure != null) {
+                    return;
+                }
+                if (buffer.size() == capacity) {
+                    buffer.clear();
+                    failure = new IllegalStateException("subscriber fell more than " + capacity
+                            + " rank changes behind");
+                } else {
+                    buffer.add(change);
+                }
+            }
+            schedule();
+        }
+
+        void complete() {
+            synchronized (this) {
+                completed = true;
+            }
+            schedule();
+        }
+
+        public void request(long n) {
+            synchronized (this) {
+                if (n <= 0) {
+                    buffer.clear();
+                    failure = new IllegalArgumentException("non-positive request: " + n);
+                } else {
+                    demand = (demand + n < 0) ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            schedule();
+        }
+
+        synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                buffer.clear();
+            }
+            feeds.remove(this);
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            while (true) {
+                RankChange next;
+                Throwable error = null;
+                boolean done = false;
+                synchronized (this) {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (failure != null) {
+                        error = failure;
+                        cancelled = true;
+                        next = null;
+                    } else if (demand > 0 && !buffer.isEmpty()) {
+                        next = buffer.poll();
+                        demand--;
+                    } else if (completed && buffer.isEmpty()) {
+                        done = true;
+                        cancelled = true;
+                        next = null;
+                    } else {
+                        return;
+                    }
+                }
+                if (error != null || done) {
+                    feeds.remove(this);
+                    if (error != null) {
+                        subscriber.onError(error);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                try {
+                    subscriber.onNext(next);
+                } catch (RuntimeException e) {
+                    // a subscriber that throws has broken the protocol
+                    cancel();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,486 @@
+package main;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A non-interactive import of a whole player roster, for rosters far too large
+ * to type in through the ScoreKeeper prompts.
+ *
+ * A roster is either a PlayerSnapshot file, recognised by its magic number,
+ * or a CSV file with one player per line as name,id,elo, optionally preceded
+ * by the header line name,id,elo in any case. Names are taken verbatim and
+ * cannot contain commas. A CSV roster is split into line-aligned chunks of a few
+ * megabytes, each chunk is memory-mapped and parsed on its own core straight
+ * from the bytes, without Scanner or per-field strings. Rows that do not parse,
+ * have a non-finite ELO or repeat an earlier ID are rejected and counted, and
+ * the import carries on. The import only fails if fewer than 3 players are
+ * left, the least a scoreboard can start with.
+ */
+public class RosterImport {
+    private static final int CHUNK_BYTES = 8 << 20;
+    private static final int MAX_REPORTED = 100;
+    // the fewest players a scoreboard starts with, as in ScoreKeeper.getPlayers
+    private static final int MIN_PLAYERS = 3;
+    // doubles with up to 15 significant digits are exact as longs
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+            1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final Player[] players;
+    private final boolean sortedByElo;
+    private final PlayerIndex index;
+    private final long rejected;
+    private final List<String> rejections;
+    private final long bytes;
+    private final long parseNanos;
+
+    private RosterImport(Player[] players, boolean sortedByElo, PlayerIndex index, long rejected,
+            List<String> rejections, long bytes, long parseNanos) {
+        this.players = players;
+        this.sortedByElo = sortedByElo;
+        this.index = index;
+        this.rejected = rejected;
+        this.rejections = rejections;
+        this.bytes = bytes;
+        this.parseNanos = parseNanos;
+    }
+
+    /**
+     * Reads a roster file.
+     *
+     * @param file The CSV or snapshot file to read.
+     * @return The imported players and the import statistics.
+     * @throws IOException If the file cannot be read, is a corrupt snapshot, or
+     *                     holds fewer than 3 valid players.
+     */
+    public static RosterImport read(Path file) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (PlayerSnapshot.isSnapshot(channel)) {
+                Player[] players = PlayerSnapshot.load(file).getPlayers();
+                List<String> rejections = new ArrayList<>();
+                PlayerIndex index = new PlayerIndex(players.length);
+                Player[] unique = dedupe(players, null, index, rejections);
+                return checkSize(new RosterImport(unique, true, index, players.length - unique.length, rejections,
+                        size, System.nanoTime() - start));
+            }
+
+            long[] bounds = chunkBounds(channel, size);
+            Chunk[] chunks = IntStream.range(0, bounds.length - 1).parallel().mapToObj(i -> {
+                try {
+                    Chunk chunk = new Chunk();
+                    if (bounds[i + 1] > bounds[i]) {
+                        chunk.parse(channel.map(FileChannel.MapMode.READ_ONLY, bounds[i], bounds[i + 1] - bounds[i]),
+                                i == 0);
+                    }
+                    return chunk;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).toArray(Chunk[]::new);
+
+            // stitch the chunks together and turn chunk line numbers into file ones
+            int total = 0;
+            long rejected = 0;
+            for (Chunk chunk : chunks) {
+                total += chunk.count;
+                rejected += chunk.rejected;
+            }
+            Player[] players = new Player[total];
+            long[] lines = new long[total];
+            List<String> rejections = new ArrayList<>();
+            long firstLine = 1;
+            int filled = 0;
+            for (Chunk chunk : chunks) {
+                System.arraycopy(chunk.players, 0, players, filled, chunk.count);
+                for (int i = 0; i < chunk.count; i++) {
+                    lines[filled + i] = firstLine + chunk.playerLines[i];
+                }
+                filled += chunk.count;
+                for (int i = 0; i < chunk.reportedLines.size() && rejections.size() < MAX_REPORTED; i++) {
+                    rejections.add("line " + (firstLine + chunk.reportedLines.get(i)) + ": "
+                            + chunk.reportedReasons.get(i));
+                }
+                firstLine += chunk.lines;
+            }
+            PlayerIndex index = new PlayerIndex(players.length);
+            Player[] unique = dedupe(players, lines, index, rejections);
+            rejected += players.length - unique.length;
+            return checkSize(
+                    new RosterImport(unique, false, index, rejected, rejections, size, System.nanoTime() - start));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Drops every player whose ID was already taken by an earlier one, and
+     * files the rest in the index. Rejections name the file line of the
+     * player, or its record number in a snapshot if there are no lines.
+     */
+    private static Player[] dedupe(Player[] players, long[] lines, PlayerIndex index, List<String> rejections) {
+        Player[] unique = new Player[players.length];
+        int count = 0;
+        for (int i = 0; i < players.length; i++) {
+            Player p = players[i];
+            if (index.get(p.getID()) == null) {
+                index.put(p);
+                unique[count++] = p;
+            } else if (rejections.size() < MAX_REPORTED) {
+                String where = (lines == null) ? "record " + (i + 1) : "line " + lines[i];
+                rejections.add(where + ": duplicate id " + p.getID() + " for " + p.getName());
+            }
+        }
+        return (count == players.length) ? unique : Arrays.copyOf(unique, count);
+    }
+
+    private static RosterImport checkSize(RosterImport roster) throws IOException {
+        if (roster.size() < MIN_PLAYERS) {
+            throw new IOException("a roster must have at least " + MIN_PLAYERS + " valid players, not "
+                    + roster.size() + " (" + roster.getRejected() + " rows rejected)");
+        }
+        return roster;
+    }
+
+    /**
+     * Splits the file into chunks of about CHUNK_BYTES, moving each boundary
+     * forward to just past the next line break.
+     */
+    private static long[] chunkBounds(FileChannel channel, long size) throws IOException {
+        int nominal = (int) Math.max(1, (size + CHUNK_BYTES - 1) / CHUNK_BYTES);
+        long[] bounds = new long[nominal + 1];
+        ByteBuffer probe = ByteBuffer.allocate(1 << 16);
+        for (int i = 1; i < nominal; i++) {
+            long position = Math.max((long) i * CHUNK_BYTES, bounds[i - 1]);
+            bounds[i] = size;
+            search: while (position < size) {
+                probe.clear();
+                int read = channel.read(probe, position);
+                if (read <= 0) {
+                    break;
+                }
+                for (int j = 0; j < read; j++) {
+                    if (probe.get(j) == '\n') {
+                        bounds[i] = position + j + 1;
+                        break search;
+                    }
+                }
+                position += read;
+            }
+        }
+        bounds[nominal] = size;
+        return bounds;
+    }
+
+    /**
+     * The players parsed from one chunk, with its line and rejection counts.
+     */
+    private static final class Chunk {
+        Player[] players = new Player[1024];
+        // the chunk-relative line of each player
+        int[] playerLines = new int[1024];
+        int count;
+        long lines;
+        long rejected;
+        // chunk-relative line numbers and reasons of the first rejections
+        final List<Long> reportedLines = new ArrayList<>();
+        final List<String> reportedReasons = new ArrayList<>();
+        private byte[] name = new byte[64];
+
+        void parse(MappedByteBuffer buf, boolean first) {
+            int end = buf.limit();
+            int pos = 0;
+            while (pos < end) {
+                int lineEnd = pos;
+                while (lineEnd < end && buf.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int contentEnd = lineEnd;
+                if (contentEnd > pos && buf.get(contentEnd - 1) == '\r') {
+                    contentEnd--;
+                }
+                if (!(first && lines == 0 && isHeader(buf, pos, contentEnd))) {
+                    parseLine(buf, pos, contentEnd);
+                }
+                lines++;
+                pos = lineEnd + 1;
+            }
+        }
+
+        private void parseLine(ByteBuffer buf, int from, int to) {
+            from = skipBlanks(buf, from, to);
+            if (from == to) {
+                return;
+            }
+            int comma1 = indexOf(buf, ',', from, to);
+            int comma2 = (comma1 < 0) ? -1 : indexOf(buf, ',', comma1 + 1, to);
+            if (comma2 < 0 || indexOf(buf, ',', comma2 + 1, to) >= 0) {
+                reject("expected name,id,elo");
+                return;
+            }
+            int nameEnd = trimEnd(buf, from, comma1);
+            if (nameEnd == from) {
+                reject("empty name");
+                return;
+            }
+            long id = parseInt(buf, comma1 + 1, comma2);
+            if (id == Long.MIN_VALUE) {
+                reject("bad id");
+                return;
+            }
+            double elo = parseDouble(buf, comma2 + 1, to);
+            if (!Double.isFinite(elo)) {
+                reject("bad elo");
+                return;
+            }
+            int length = nameEnd - from;
+            if (length > name.length) {
+                name = new byte[Math.max(length, name.length * 2)];
+            }
+            buf.get(from, name, 0, length);
+            if (count == players.length) {
+                players = Arrays.copyOf(players, count * 2);
+                playerLines = Arrays.copyOf(playerLines, count * 2);
+            }
+            playerLines[count] = (int) lines;
+            players[count++] = new Player(new String(name, 0, length, StandardCharsets.UTF_8), (int) id, elo);
+        }
+
+        private void reject(String reason) {
+            rejected++;
+            if (reportedLines.size() < MAX_REPORTED) {
+                reportedLines.add(lines);
+                reportedReasons.add(reason);
+            }
+        }
+    }
+
+    /**
+     * Tells whether a line is the name,id,elo header, in any case and with
+     * blanks allowed around the fields. A player whose name merely starts
+     * with "name" is not a header.
+     */
+    private static boolean isHeader(ByteBuffer buf, int from, int to) {
+        int comma1 = indexOf(buf, ',', from, to);
+        int comma2 = (comma1 < 0) ? -1 : indexOf(buf, ',', comma1 + 1, to);
+        return comma2 >= 0 && isWord(buf, from, comma1, "name") && isWord(buf, comma1 + 1, comma2, "id")
+                && isWord(buf, comma2 + 1, to, "elo");
+    }
+
+    /**
+     * Tells whether a field, blanks aside, is the given lower-case word in any
+     * case.
+     */
+    private static boolean isWord(ByteBuffer buf, int from, int to, String word) {
+        from = skipBlanks(buf, from, to);
+        to = trimEnd(buf, from, to);
+        if (to - from != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if ((buf.get(from + i) | 0x20) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(ByteBuffer buf, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf.get(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static int skipBlanks(ByteBuffer buf, int from, int to) {
+        while (from < to && isBlank(buf.get(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(ByteBuffer buf, int from, int to) {
+        while (to > from && isBlank(buf.get(to - 1))) {
+            to--;
+        }
+        return to;
+    }
+
+    /**
+     * Parses an int field, allowing blanks around it.
+     *
+     * @return The value, or Long.MIN_VALUE if the field is not an int.
+     */
+    private static long parseInt(ByteBuffer buf, int from, int to) {
+        from = skipBlanks(buf, from, to);
+        to = trimEnd(buf, from, to);
+        boolean negative = from < to && buf.get(from) == '-';
+        if (negative) {
+            from++;
+        }
+        if (from == to) {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buf.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                return Long.MIN_VALUE;
+            }
+        }
+        value = negative ? -value : value;
+        return (value > Integer.MAX_VALUE) ? Long.MIN_VALUE : value;
+    }
+
+    /**
+     * Parses a double field, allowing blanks around it. Plain decimals with up
+     * to 15 significant digits are converted directly, which is exact: both the
+     * digits and the power of ten are exact doubles and the one division
+     * rounds correctly. Anything else goes through Double.parseDouble.
+     *
+     * @return The value, or NaN if the field is not a number.
+     */
+    private static double parseDouble(ByteBuffer buf, int from, int to) {
+        from = skipBlanks(buf, from, to);
+        to = trimEnd(buf, from, to);
+        int i = from;
+        boolean negative = i < to && buf.get(i) == '-';
+        if (negative || (i < to && buf.get(i) == '+')) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        boolean seenDigit = false;
+        boolean fast = true;
+        for (; i < to; i++) {
+            byte b = buf.get(i);
+            if (b >= '0' && b <= '9') {
+                seenDigit = true;
+                if (mantissa != 0 || b != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+                if (digits > MAX_FAST_DIGITS || fractionDigits >= POW10.length) {
+                    fast = false;
+                    break;
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                fast = false;
+                break;
+            }
+        }
+        if (fast && seenDigit) {
+            double value = mantissa / POW10[fractionDigits];
+            return negative ? -value : value;
+        }
+        byte[] text = new byte[to - from];
+        buf.get(from, text);
+        try {
+            return Double.parseDouble(new String(text, StandardCharsets.ISO_8859_1));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * @return The number of players imported.
+     */
+    public int size() {
+        return players.length;
+    }
+
+    /**
+     * @return The imported players, in file order.
+     */
+    public Player[] getPlayers() {
+        return players;
+    }
+
+    /**
+     * @return The number of rows that were rejected.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return Descriptions of the first rejected rows.
+     */
+    public List<String> getRejections() {
+        return rejections;
+    }
+
+    /**
+     * @return The size of the roster file in bytes.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return The parse throughput in megabytes per second.
+     */
+    public double getMegabytesPerSecond() {
+        return (parseNanos == 0) ? 0 : bytes * 1e3 / parseNanos;
+    }
+
+    /**
+     * @return The parse throughput in rows per second.
+     */
+    public double getRowsPerSecond() {
+        return (parseNanos == 0) ? 0 : (players.length + rejected) * 1e9 / parseNanos;
+    }
+
+    /**
+     * Builds the ELO tree in one bulk build. A snapshot roster is already in
+     * tree order and is not sorted again.
+     *
+     * @return The ELO tree.
+     */
+    public AVLPlayerNode buildTree() {
+        if (!sortedByElo) {
+            return ScoreKeeper.getTree(players, true);
+        }
+        double[] elos = new double[players.length];
+        for (int i = 0; i < players.length; i++) {
+            elos[i] = players[i].getELO();
+        }
+        return AVLPlayerNode.fromSorted(players, elos);
+    }
+
+    /**
+     * @return The ID index over the imported players.
+     */
+    public PlayerIndex getIndex() {
+        return index;
+    }
+}
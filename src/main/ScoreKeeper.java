@@ -11,16 +11,182 @@ package main;
  * @author COSI 21a-Team
  */
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.InputMismatchException;
 import java.util.Scanner;
 
+import javax.management.JMException;
+
 public class ScoreKeeper {
-	public static void main(String[] args) {
+	private static final int BATCH_BUFFER_CHARS = 1 << 16;
+	// the fewest players a scoreboard may run with, as in RosterImport
+	private static final int MIN_PLAYERS = 3;
+
+	/**
+	 * Runs the scoreboard. If a snapshot file is given and exists, the players
+	 * are loaded from it instead of being entered one by one, and the changes
+	 * logged in its journal since it was written are replayed. Every match,
+	 * added player and deleted player is journaled as it is entered, and the
+	 * scoreboard is saved back to the snapshot on exit. With --import, the players are read from a roster file
+	 * instead and replace any existing snapshot. With --serve, the leaderboard
+	 * is served over TCP by a LeaderboardServer instead of the console; its
+	 * writes are journaled the same way, and the snapshot is saved when the
+	 * process is shut down. With --batch, commands are
+	 * read from a script file, or from standard input if it is "-", and run
+	 * by batchLoop without prompts; a new scoreboard's players come first in the
+	 * script, as a count followed by name, id and ELO for each player. With
+	 * --metrics, TreeMetrics are recorded, registered as MBeans and dumped to
+	 * standard error every given number of seconds.
+	 *
+	 * Usage: ScoreKeeper [--import roster] [--serve port] [--batch script] [--metrics seconds] [snapshot]
+	 */
+	public static void main(String[] args) throws IOException, JMException {
 
 		Scanner scan = new Scanner(System.in);
-		Player[] startPlayers = getPlayers(scan);
-		AVLPlayerNode eloTree = getTree(startPlayers, true);
-		AVLPlayerNode idTree = getTree(startPlayers, false);
-		driverLoop(scan, eloTree, idTree, startPlayers.length);
+		Path rosterFile = null;
+		Path snapshotFile = null;
+		int port = -1;
+		CommandReader commands = null;
+		Writer out = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--import") && i + 1 < args.length) {
+				rosterFile = Paths.get(args[++i]);
+			} else if (args[i].equals("--serve") && i + 1 < args.length) {
+				port = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--metrics") && i + 1 < args.length) {
+				long periodMillis = Long.parseLong(args[++i]) * 1000;
+				TreeMetrics.enable(true);
+				TreeMetrics.register();
+				TreeMetrics.startDumping(System.err, periodMillis);
+			} else if (args[i].equals("--batch") && i + 1 < args.length) {
+				String script = args[++i];
+				InputStream in = script.equals("-") ? System.in : Files.newInputStream(Paths.get(script));
+				out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+						BATCH_BUFFER_CHARS);
+				commands = new CommandReader(in, out);
+			} else {
+				snapshotFile = Paths.get(args[i]);
+			}
+		}
+		AVLPlayerNode eloTree;
+		PlayerIndex idIndex;
+		int numPeople;
+		if (rosterFile == null && snapshotFile != null && Files.exists(snapshotFile)) {
+			PlayerSnapshot snapshot = PlayerSnapshot.load(snapshotFile);
+			if (snapshot.size() < MIN_PLAYERS) {
+				throw new IOException("a snapshot must have at least " + MIN_PLAYERS + " players, not "
+						+ snapshot.size() + ": " + snapshotFile);
+			}
+			eloTree = snapshot.buildTree();
+			idIndex = snapshot.buildIndex();
+			numPeople = snapshot.size();
+			Path journalFile = journalFile(snapshotFile);
+			if (Files.exists(journalFile)) {
+				MatchJournal.Replay replay = MatchJournal.replay(journalFile, eloTree, idIndex);
+				eloTree = replay.getTree();
+				numPeople = idIndex.size();
+				System.out.printf("Replayed %d matches, %d added and %d deleted players from the journal (%.0f matches/s)\n",
+						replay.getMatches(), replay.getAdds(), replay.getDeletes(), replay.getMatchesPerSecond());
+			}
+		} else {
+			if (rosterFile != null) {
+				RosterImport roster = importRoster(rosterFile);
+				eloTree = roster.buildTree();
+				idIndex = roster.getIndex();
+				numPeople = roster.size();
+			} else {
+				Player[] startPlayers = (commands != null) ? readPlayers(commands) : getPlayers(scan);
+				eloTree = getTree(startPlayers, true);
+				idIndex = getIndex(startPlayers);
+				numPeople = startPlayers.length;
+			}
+			if (snapshotFile != null) {
+				// the journal only ever holds matches played after the snapshot
+				PlayerSnapshot.write(snapshotFile, eloTree);
+				Files.deleteIfExists(journalFile(snapshotFile));
+			}
+		}
+		if (port >= 0) {
+			serve(new ConcurrentLeaderboard(eloTree, idIndex), port, snapshotFile, numPeople);
+			return;
+		}
+		if (snapshotFile == null) {
+			run(scan, commands, out, eloTree, idIndex, numPeople, null);
+			return;
+		}
+		try (MatchJournal journal = new MatchJournal(journalFile(snapshotFile), MatchJournal.Durability.PER_EVENT,
+				0)) {
+			eloTree = run(scan, commands, out, eloTree, idIndex, numPeople, journal);
+			PlayerSnapshot.write(snapshotFile, eloTree);
+			journal.truncate();
+		}
+	}
+
+	private static AVLPlayerNode run(Scanner scan, CommandReader commands, Writer out, AVLPlayerNode eloTree,
+			PlayerIndex idIndex, int numPeople, MatchJournal journal) throws IOException {
+		if (commands == null) {
+			return driverLoop(scan, eloTree, idIndex, numPeople, journal);
+		}
+		try {
+			return batchLoop(commands, out, eloTree, idIndex, numPeople, journal);
+		} finally {
+			out.flush();
+		}
+	}
+
+	/**
+	 * Serves the leaderboard until the process is shut down. With a snapshot
+	 * file, the server journals every write, and a shutdown hook closes the
+	 * server, saves the snapshot and empties the journal.
+	 */
+	private static void serve(ConcurrentLeaderboard board, int port, Path snapshotFile, int numPeople)
+			throws IOException {
+		// the server forces the journal once per run of writes before answering them
+		MatchJournal journal = (snapshotFile == null) ? null
+				: new MatchJournal(journalFile(snapshotFile), MatchJournal.Durability.ON_FLUSH, 0);
+		LeaderboardServer server = new LeaderboardServer(board, port, journal);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				server.close();
+				if (journal != null) {
+					try (journal) {
+						board.writeSnapshot(snapshotFile);
+						journal.truncate();
+					}
+				}
+			} catch (IOException e) {
+				// whatever the snapshot misses is still in the journal
+				System.err.println("Could not save the scoreboard: " + e);
+			}
+		}, "scorekeeper-shutdown"));
+		System.out.printf("Serving %d players on port %d\n", numPeople, server.getPort());
+	}
+
+	/**
+	 * Imports a roster file and reports the throughput and the rejected rows.
+	 */
+	public static RosterImport importRoster(Path rosterFile) throws IOException {
+		RosterImport roster = RosterImport.read(rosterFile);
+		System.out.printf("Imported %d players from %s (%.1f MB/s, %.0f rows/s), rejected %d rows\n", roster.size(),
+				rosterFile, roster.getMegabytesPerSecond(), roster.getRowsPerSecond(), roster.getRejected());
+		for (String rejection : roster.getRejections()) {
+			System.err.println(rejection);
+		}
+		return roster;
+	}
+
+	private static Path journalFile(Path snapshotFile) {
+		return snapshotFile.resolveSibling(snapshotFile.getFileName() + ".journal");
 	}
 
 	public static Player[] getPlayers(Scanner scan) {
@@ -50,38 +216,77 @@ public class ScoreKeeper {
 		return p;
 	}
 
-	public static AVLPlayerNode getTree(Player[] players, boolean useElo) {
-
-		AVLPlayerNode tree = new AVLPlayerNode(players[0], (double) players[0].getID());
-		if (useElo) {
-			tree = new AVLPlayerNode(players[0], players[0].getELO());
+	/**
+	 * Reads the players of a new scoreboard from a script: their count, then
+	 * the name, id and ELO of each player.
+	 *
+	 * @throws InputMismatchException If the script does not start with at
+	 *                                least 3 well-formed players.
+	 */
+	public static Player[] readPlayers(CommandReader in) throws IOException {
+		int n = in.nextInt();
+		if (n < 3) {
+			throw new InputMismatchException("must be at least 3 players, not " + n);
 		}
-		for (int i = 1; i < players.length; i++) {
-			if (useElo) {
-				tree = tree.insert(players[i], players[i].getELO());
-			} else {
-				tree = tree.insert(players[i], (double) players[i].getID());
-			}
+		Player[] people = new Player[n];
+		for (int i = 0; i < n; i++) {
+			String name = in.next();
+			int id = in.nextInt();
+			people[i] = new Player(name, id, in.nextDouble());
+		}
+		return people;
+	}
+
+	/**
+	 * Builds a balanced tree over the players keyed by ELO or by ID. The players
+	 * are sorted (in parallel for large inputs) and the tree is built bottom-up
+	 * in linear time instead of inserting them one at a time.
+	 */
+	public static AVLPlayerNode getTree(Player[] players, boolean useElo) {
+		Player[] sorted = players.clone();
+		// the ELO tree breaks ties by decreasing ID, see AVLPlayerNode
+		Comparator<Player> byId = Comparator.comparingInt(Player::getID);
+		Comparator<Player> order = useElo ? Comparator.comparingDouble(Player::getELO).thenComparing(byId.reversed())
+				: byId;
+		Arrays.parallelSort(sorted, order);
+		double[] values = new double[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			values[i] = useElo ? sorted[i].getELO() : (double) sorted[i].getID();
 		}
-		return tree;
+		return AVLPlayerNode.fromSorted(sorted, values);
+	}
 
+	public static PlayerIndex getIndex(Player[] players) {
+		PlayerIndex index = new PlayerIndex(players.length);
+		for (Player player : players) {
+			index.put(player);
+		}
+		return index;
 	}
 
-	public static void checkRank(AVLPlayerNode eloTree, AVLPlayerNode idTree, Scanner scan) {
+	public static void checkRank(AVLPlayerNode eloTree, PlayerIndex idIndex, Scanner scan) {
 		System.out.println("Please enter the ID number of the player whose rank you wish to check");
 		int id = scan.nextInt();
-		Player p = idTree.getPlayer((double) id);
+		Player p = idIndex.get(id);
 		System.out.printf("ID: %d NAME: %s RANK: %d\n", id, p.getName(), eloTree.getRank(p.getELO()));
 	}
 
-	public static void checkELO(AVLPlayerNode idTree, Scanner scan) {
+	public static void checkELO(PlayerIndex idIndex, Scanner scan) {
 		System.out.println("Please enter the ID number of the player whose ELO you wish to check");
 		int id = scan.nextInt();
-		Player p = idTree.getPlayer((double) id);
+		Player p = idIndex.get(id);
 		System.out.printf("ID: %d NAME: %s ELO: %f\n", id, p.getName(), p.getELO());
 	}
 
-	public static void driverLoop(Scanner scan, AVLPlayerNode eloTree, AVLPlayerNode idTree, int numPeople) {
+	/**
+	 * Runs commands until the user exits. Matches, added players and deleted
+	 * players are logged to the journal, if there is one, once they have been
+	 * applied.
+	 *
+	 * @return The ELO tree as it stands on exit.
+	 */
+	public static AVLPlayerNode driverLoop(Scanner scan, AVLPlayerNode eloTree, PlayerIndex idIndex, int numPeople,
+			MatchJournal journal) throws IOException {
 		boolean keepGoing = true;
 		while (keepGoing) {
 			System.out.printf(
@@ -96,9 +301,16 @@ public class ScoreKeeper {
 					// Uncomment this code when you have implemented insert
 
 					Player p = getNextPlayer(scan);
+					if (idIndex.get(p.getID()) != null) {
+						System.out.println("ID " + p.getID() + " is already taken");
+						break;
+					}
 					eloTree = eloTree.insert(p, p.getELO());
-					idTree = idTree.insert(p, (double) p.getID());
+					idIndex.put(p);
 					numPeople++;
+					if (journal != null) {
+						journal.appendAdd(p);
+					}
 					// System.out.println("Unsupported operation");
 					break;
 				case 'D':
@@ -107,23 +319,24 @@ public class ScoreKeeper {
 						System.out
 								.println("Please enter the ID number of the player you wish to remove from the system");
 						int id = scan.nextInt();
-						Player curtains = idTree.getPlayer((double) id);
-						idTree = idTree.delete(id);
-						eloTree = eloTree.delete(curtains.getELO());
+						Player curtains = idIndex.remove(id);
+						eloTree = eloTree.delete(curtains, curtains.getELO());
 						numPeople--;
-						System.out.println("Unsupported operation");
+						if (journal != null) {
+							journal.appendDelete(id);
+						}
 					} else {
 						System.out.println("Cannot afford to lose any more people");
 					}
 					break;
 				case 'R':
 					// Uncomment this code when you have implemented getPlayer and getRank
-					checkRank(eloTree, idTree, scan);
+					checkRank(eloTree, idIndex, scan);
 					// System.out.println("Unsupported Operation");
 					break;
 				case 'E':
 					// Uncomment this code when you have implemented getRank
-					checkELO(idTree, scan);
+					checkELO(idIndex, scan);
 					// System.out.println("Unsupported Operation");
 					break;
 				case 'L':
@@ -133,51 +346,174 @@ public class ScoreKeeper {
 				case 'P':
 					// Uncomment this code when you have implemented treeString
 					System.out.println("ELO tree: " + eloTree.treeString());
-					System.out.println("ID tree: " + idTree.treeString());
 					// System.out.println("Unsupported Operation");
 					break;
 				case 'M':
-					// extra credit, requires self balancing delete
-					// Uncomment this when you have implemented the extra credit
-
-					/*
-					 * System.out.
-					 * println("Please enter the ID number of the first player in the match");
-					 * int id1=scan.nextInt();
-					 * Player p1 = idTree.getPlayer((double)id1);
-					 * idTree=idTree.delete((double)id1);
-					 * eloTree=eloTree.delete(p1.getELO());
-					 * System.out.
-					 * println("Please enter the ID number of the second player in the match");
-					 * int id2=scan.nextInt();
-					 * Player p2 = idTree.getPlayer((double)id2);
-					 * idTree=idTree.delete((double)id2);
-					 * eloTree=eloTree.delete(p2.getELO());
-					 * System.out.
-					 * printf("Please enter the outcome of the match\n1 if the first player (%s) was the winner\n2 if the second player (%s) was the winner\n0 if the match was a draw\n"
-					 * ,p1.getName(),p2.getName());
-					 * int n = scan.nextInt();
-					 * if(n==2){
-					 * p2.logVictory(p1);
-					 * }else if(n==1){
-					 * p1.logVictory(p2);
-					 * }else if(n==0){
-					 * p1.stalemate(p2);
-					 * }else{
-					 * System.out.println("Invalid command");
-					 * break;
-					 * }
-					 * idTree=idTree.insert(p1,(double)p1.getID());
-					 * idTree=idTree.insert(p2,(double)p2.getID());
-					 * eloTree=eloTree.insert(p1,p1.getELO());
-					 * eloTree=eloTree.insert(p2,p2.getELO());
-					 */
-					System.out.println("Unsupported Operation");
+					System.out.println("Please enter the ID number of the first player in the match");
+					int id1 = scan.nextInt();
+					Player p1 = idIndex.get(id1);
+					System.out.println("Please enter the ID number of the second player in the match");
+					int id2 = scan.nextInt();
+					Player p2 = idIndex.get(id2);
+					System.out.printf(
+							"Please enter the outcome of the match\n1 if the first player (%s) was the winner\n2 if the second player (%s) was the winner\n0 if the match was a draw\n",
+							p1.getName(), p2.getName());
+					int n = scan.nextInt();
+					double oldElo1 = p1.getELO();
+					double oldElo2 = p2.getELO();
+					if (n == 2) {
+						p2.logVictory(p1);
+					} else if (n == 1) {
+						p1.logVictory(p2);
+					} else if (n == 0) {
+						p1.stalemate(p2);
+					} else {
+						System.out.println("Invalid command");
+						break;
+					}
+					// IDs never change, so the ID index needs no update
+					eloTree = eloTree.updateScore(p1, oldElo1, p1.getELO());
+					eloTree = eloTree.updateScore(p2, oldElo2, p2.getELO());
+					if (journal != null) {
+						journal.append(id1, id2, n, p1.getELO(), p2.getELO());
+					}
 					break;
 				default:
 					System.out.println("Invalid command");
 					break;
 			}
+			// the leaderboard's tree is the one whose shape TreeMetrics follows
+			eloTree.recordShape();
+		}
+		return eloTree;
+	}
+
+	/**
+	 * Runs the commands of a script until it ends or exits. The commands are
+	 * those of driverLoop, each followed by its arguments instead of being
+	 * prompted for them:
+	 * A name id elo, D id, R id, E id, L, P, M id1 id2 outcome and X. Results
+	 * are written to out, and only results: no menu and no prompts. Commands
+	 * that the driver loop would fail on, such as an unknown ID, are answered
+	 * with an error line instead so the rest of the script still runs. Like
+	 * driverLoop, matches, added players and deleted players are logged to the
+	 * journal, if there is one, once they have been applied.
+	 *
+	 * out is not flushed here. Given a buffered writer that is also the
+	 * CommandReader's output, the answers to a script that arrives all at
+	 * once go out in a few large writes.
+	 *
+	 * @return The ELO tree as it stands on exit.
+	 */
+	public static AVLPlayerNode batchLoop(CommandReader in, Writer out, AVLPlayerNode eloTree, PlayerIndex idIndex,
+			int numPeople, MatchJournal journal) throws IOException {
+		String command;
+		while ((command = in.next()) != null) {
+			try {
+				switch (command.charAt(0)) {
+					case 'X':
+						return eloTree;
+					case 'A': {
+						String name = in.next();
+						int id = in.nextInt();
+						double elo = in.nextDouble();
+						if (idIndex.get(id) != null) {
+							out.write("ID " + id + " is already taken\n");
+							break;
+						}
+						Player p = new Player(name, id, elo);
+						eloTree = eloTree.insert(p, elo);
+						idIndex.put(p);
+						numPeople++;
+						if (journal != null) {
+							journal.appendAdd(p);
+						}
+						break;
+					}
+					case 'D': {
+						// the ID is read either way so the script stays in step
+						int id = in.nextInt();
+						if (numPeople <= 3) {
+							out.write("Cannot afford to lose any more people\n");
+						} else if (idIndex.get(id) == null) {
+							out.write("No player with ID " + id + "\n");
+						} else {
+							Player curtains = idIndex.remove(id);
+							eloTree = eloTree.delete(curtains, curtains.getELO());
+							numPeople--;
+							if (journal != null) {
+								journal.appendDelete(id);
+							}
+						}
+						break;
+					}
+					case 'R': {
+						int id = in.nextInt();
+						Player p = idIndex.get(id);
+						if (p == null) {
+							out.write("No player with ID " + id + "\n");
+						} else {
+							out.write("ID: " + id + " NAME: " + p.getName() + " RANK: " + eloTree.getRank(p.getELO())
+									+ "\n");
+						}
+						break;
+					}
+					case 'E': {
+						int id = in.nextInt();
+						Player p = idIndex.get(id);
+						if (p == null) {
+							out.write("No player with ID " + id + "\n");
+						} else {
+							out.write(String.format("ID: %d NAME: %s ELO: %f\n", id, p.getName(), p.getELO()));
+						}
+						break;
+					}
+					case 'L':
+						eloTree.writeScoreboard(out);
+						out.write('\n');
+						break;
+					case 'P':
+						out.write("ELO tree: " + eloTree.treeString() + "\n");
+						break;
+					case 'M': {
+						int id1 = in.nextInt();
+						int id2 = in.nextInt();
+						int n = in.nextInt();
+						Player p1 = idIndex.get(id1);
+						Player p2 = idIndex.get(id2);
+						if (p1 == null || p2 == null) {
+							out.write("No player with ID " + (p1 == null ? id1 : id2) + "\n");
+							break;
+						}
+						if (p1 == p2 || n < 0 || n > 2) {
+							out.write("Invalid command\n");
+							break;
+						}
+						double oldElo1 = p1.getELO();
+						double oldElo2 = p2.getELO();
+						if (n == 2) {
+							p2.logVictory(p1);
+						} else if (n == 1) {
+							p1.logVictory(p2);
+						} else {
+							p1.stalemate(p2);
+						}
+						eloTree = eloTree.updateScore(p1, oldElo1, p1.getELO());
+						eloTree = eloTree.updateScore(p2, oldElo2, p2.getELO());
+						if (journal != null) {
+							journal.append(id1, id2, n, p1.getELO(), p2.getELO());
+						}
+						break;
+					}
+					default:
+						out.write("Invalid command\n");
+						break;
+				}
+			} catch (InputMismatchException e) {
+				out.write("Invalid command\n");
+			}
+			eloTree.recordShape();
 		}
+		return eloTree;
 	}
 }
@@ -0,0 +1,182 @@
+package main;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Writes scoreboard rows into a reusable character buffer and flushes the
+ * buffer to an Appendable whenever it fills up. Rows are formatted by hand
+ * instead of through String.format, but the output is identical to the
+ * "%-10s %-3d %.2f\n" row format in the default format locale at the time
+ * the writer was created, decimal separator included. Locales that write
+ * digits other than '0' to '9' are left to String.format. Memory use is
+ * bounded by the buffer size no matter how many rows are written.
+ */
+public class ScoreboardWriter {
+    private static final int BUFFER_SIZE = 8192;
+    // longest row the fast path can produce apart from the name
+    private static final int MAX_ROW_TAIL = 64;
+    // scores at or above this magnitude are left to String.format; below it
+    // 100 * score is off its decimal value by under 2e-8, far inside HALF_WINDOW
+    private static final double FAST_LIMIT = 1e6;
+    // hundredths this close to a half are left to String.format
+    private static final double HALF_WINDOW = 1e-6;
+
+    private final Appendable out;
+    private final char[] buf;
+    private final Locale locale;
+    private final char decimalSeparator;
+    // whether the locale writes ASCII digits, which the fast paths assume
+    private final boolean asciiDigits;
+    private int len;
+
+    public ScoreboardWriter(Appendable out) {
+        this.out = out;
+        this.buf = new char[BUFFER_SIZE];
+        this.locale = Locale.getDefault(Locale.Category.FORMAT);
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+        this.decimalSeparator = symbols.getDecimalSeparator();
+        this.asciiDigits = symbols.getZeroDigit() == '0';
+    }
+
+    /**
+     * Writes the NAME/ID/SCORE header line.
+     *
+     * @throws IOException If the underlying Appendable fails.
+     */
+    public void writeHeader() throws IOException {
+        appendPadded("NAME", 10);
+        put(' ');
+        appendPadded("ID", 3);
+        put(' ');
+        appendPadded("SCORE", 0);
+        put('\n');
+    }
+
+    /**
+     * Writes one row for the given player.
+     *
+     * @param player The player to write.
+     * @throws IOException If the underlying Appendable fails.
+     */
+    public void writeRow(Player player) throws IOException {
+        appendPadded(player.getName(), 10);
+        ensure(MAX_ROW_TAIL);
+        put(' ');
+        if (asciiDigits) {
+            int start = len;
+            appendInt(player.getID());
+            while (len - start < 3) {
+                buf[len++] = ' ';
+            }
+        } else {
+            appendPadded(String.format(locale, "%-3d", player.getID()), 0);
+        }
+        put(' ');
+        appendScore(player.getELO());
+        put('\n');
+    }
+
+    /**
+     * Writes any buffered characters to the underlying Appendable.
+     *
+     * @throws IOException If the underlying Appendable fails.
+     */
+    public void flush() throws IOException {
+        if (len == 0) {
+            return;
+        }
+        if (out instanceof Writer) {
+            ((Writer) out).write(buf, 0, len);
+        } else if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(buf, 0, len);
+        } else {
+            out.append(CharBuffer.wrap(buf, 0, len));
+        }
+        len = 0;
+    }
+
+    private void put(char c) throws IOException {
+        ensure(1);
+        buf[len++] = c;
+    }
+
+    private void ensure(int room) throws IOException {
+        if (len + room > buf.length) {
+            flush();
+        }
+    }
+
+    private void appendPadded(String s, int width) throws IOException {
+        int n = s.length();
+        int at = 0;
+        while (at < n) {
+            ensure(1);
+            int chunk = Math.min(n - at, buf.length - len);
+            s.getChars(at, at + chunk, buf, len);
+            len += chunk;
+            at += chunk;
+        }
+        for (int i = n; i < width; i++) {
+            put(' ');
+        }
+    }
+
+    private void appendInt(int value) {
+        if (value < 0) {
+            buf[len++] = '-';
+            appendDigits(-(long) value);
+        } else {
+            appendDigits(value);
+        }
+    }
+
+    private void appendDigits(long value) {
+        int end = len + digitCount(value);
+        int at = end;
+        do {
+            buf[--at] = (char) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        len = end;
+    }
+
+    private static int digitCount(long value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Appends the score with two decimals. Formatter rounds half-up on the
+     * shortest decimal representation of the double, so a score whose
+     * hundredths land almost exactly on a half is handed to String.format
+     * rather than risk a different rounding; so are non-finite scores and
+     * scores too large for the half window to stay wider than their ulp,
+     * and every score in a locale without ASCII digits.
+     */
+    private void appendScore(double score) throws IOException {
+        double magnitude = Math.abs(score);
+        double scaled = magnitude * 100.0;
+        double frac = scaled - Math.floor(scaled);
+        if (!asciiDigits || !(magnitude < FAST_LIMIT) || Math.abs(frac - 0.5) < HALF_WINDOW) {
+            appendPadded(String.format(locale, "%.2f", score), 0);
+            return;
+        }
+        long cents = (long) Math.floor(scaled + 0.5);
+        if (Double.doubleToRawLongBits(score) < 0) {
+            buf[len++] = '-';
+        }
+        appendDigits(cents / 100);
+        buf[len++] = decimalSeparator;
+        long rest = cents % 100;
+        buf[len++] = (char) ('0' + rest / 10);
+        buf[len++] = (char) ('0' + rest % 10);
+    }
+}
@@ -0,0 +1,521 @@
+package main;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A thread-safe leaderboard engine built on an indexable skip list. Players
+ * are kept in scoreboard order, i.e. by decreasing value and, among players
+ * sharing a value, by increasing ID as in AVLPlayerNode. Every forward link
+ * carries a span: the number of players it jumps over. Summing the spans
+ * along a search gives a player's rank, so getRank and selectByRank run in
+ * expected O(log n). There are no rotations: an update only relinks the
+ * neighbours of one node.
+ *
+ * Writers lock nodes, not the list, in the manner of the lazy skip list:
+ * a writer locks the predecessors it relinks, checks they are still
+ * unremoved and still point where its search left them, and retries the
+ * search if not. A node is marked under its own lock before it is unlinked,
+ * and locks are always taken from right to left, so writers cannot
+ * deadlock. The links passing over a changed node only gain or lose one,
+ * and the writer applies that to each of them in turn under the lock of the
+ * node owning the link, without holding the others. Three inserts in four
+ * (nodes that stay on the bottom level) and every delete run side by side
+ * this way. An insert that rises above the bottom level also has to split
+ * the spans of the links it enters, which needs its exact distance from
+ * their owners; that distance moves under the other writers, so such an
+ * insert waits for them to finish and runs alone.
+ *
+ * Reads take no lock. A reader notes the writer count before and after its
+ * search and keeps the result only if no write started or was running in
+ * between; otherwise it reads again with the writers held off.
+ */
+public class SkipListLeaderboard implements Leaderboard {
+    private static final int MAX_LEVEL = 32;
+    // writes packs the finished writes in its high half and the running ones in its low half
+    private static final long STARTED = 1;
+    private static final long FINISHED = (1L << 32) - 1;
+
+    private final Node head = new Node(null, Double.NaN, Integer.MIN_VALUE, MAX_LEVEL);
+    // read-locked by writers that may run side by side, write-locked by those that may not
+    private final StampedLock gate = new StampedLock();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile int level = 1;
+
+    /**
+     * Files a player under the given value.
+     *
+     * @param newGuy The player to insert.
+     * @param value  The value to file the player under.
+     * @return This leaderboard.
+     */
+    public SkipListLeaderboard insert(Player newGuy, double value) {
+        int nodeLevel = randomLevel();
+        if (nodeLevel == 1) {
+            long stamp = gate.readLock();
+            writes.addAndGet(STARTED);
+            try {
+                insertBottom(newGuy, value);
+            } finally {
+                writes.addAndGet(FINISHED);
+                gate.unlockRead(stamp);
+            }
+        } else {
+            long stamp = gate.writeLock();
+            writes.addAndGet(STARTED);
+            try {
+                insertAlone(newGuy, value, nodeLevel);
+            } finally {
+                writes.addAndGet(FINISHED);
+                gate.unlockWrite(stamp);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Removes the first player, in scoreboard order, filed under the value.
+     *
+     * @param value The value of the player to remove.
+     * @return This leaderboard.
+     */
+    public SkipListLeaderboard delete(double value) {
+        remove(value, Integer.MIN_VALUE, null);
+        return this;
+    }
+
+    /**
+     * Removes the given player, found by its (value, ID) position.
+     *
+     * @param player The player to remove.
+     * @param value  The value the player is filed under.
+     * @return true if the player was found and removed.
+     */
+    public boolean delete(Player player, double value) {
+        return remove(value, player.getID(), player);
+    }
+
+    public Player getPlayer(double value) {
+        return read(() -> {
+            Node x = nodeAt(countGreater(value) + 1);
+            return (x != null && x.value == value) ? x.player : null;
+        });
+    }
+
+    public int getRank(double eloScore) {
+        return readInt(() -> {
+            int greater = countGreater(eloScore);
+            Node x = nodeAt(greater + 1);
+            return (x != null && x.value == eloScore) ? greater + 1 : 0;
+        });
+    }
+
+    public Player selectByRank(int k) {
+        return read(() -> {
+            Node x = nodeAt(k);
+            return (x == null) ? null : x.player;
+        });
+    }
+
+    /**
+     * @return The number of players on the leaderboard.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Renders the whole scoreboard.
+     *
+     * @return The whole scoreboard.
+     */
+    public String scoreboard() {
+        return scoreboard(0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Renders one page of the scoreboard. The first row is
+     * found through the spans and the rest by walking the bottom level.
+     *
+     * @param offset The number of top-ranked players to skip.
+     * @param limit  The maximum number of players to list.
+     * @return One page of the scoreboard.
+     */
+    public String scoreboard(int offset, int limit) {
+        return read(() -> {
+            try {
+                StringBuilder sb = new StringBuilder();
+                ScoreboardWriter writer = new ScoreboardWriter(sb);
+                writer.writeHeader();
+                Node x = (offset < 0) ? null : nodeAt(offset + 1);
+                for (int i = 0; i < limit && x != null; i++) {
+                    writer.writeRow(x.player);
+                    x = x.next.get(0);
+                }
+                writer.flush();
+                return sb.toString();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Checks every span against a walk of the bottom level, with the writers
+     * held off. Meant for tests and for diagnosing a board after a load run.
+     *
+     * @return true if every link jumps over exactly as many players as its
+     *         span says.
+     */
+    public boolean spansAreExact() {
+        long stamp = gate.writeLock();
+        try {
+            for (int i = 0; i < level; i++) {
+                for (Node x = head; x != null; x = x.next.get(i)) {
+                    int skipped = 0;
+                    Node end = x.next.get(i);
+                    for (Node y = x.next.get(0); y != null; y = y.next.get(0)) {
+                        skipped++;
+                        if (y == end) {
+                            break;
+                        }
+                    }
+                    if (skipped != x.span.get(i)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } finally {
+            gate.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Links a bottom-level node under the lock of its predecessor, then adds
+     * it to the links passing over it. Runs beside other such writers.
+     */
+    private void insertBottom(Player newGuy, double value) {
+        int id = newGuy.getID();
+        Node node = new Node(newGuy, value, id, 1);
+        while (true) {
+            Node pred = head;
+            Node succ = pred.next.get(0);
+            for (int i = level - 1; i >= 0; i--) {
+                succ = pred.next.get(i);
+                while (succ != null && precedes(succ, value, id)) {
+                    pred = succ;
+                    succ = pred.next.get(i);
+                }
+            }
+            pred.lock.lock();
+            try {
+                if (!pred.marked && pred.next.get(0) == succ && (succ == null || !succ.marked)) {
+                    node.next.set(0, succ);
+                    node.span.set(0, (succ == null) ? 0 : 1);
+                    pred.next.set(0, node);
+                    pred.span.set(0, 1);
+                    break;
+                }
+            } finally {
+                pred.lock.unlock();
+            }
+        }
+        size.incrementAndGet();
+        adjustCovering(1, value, id, 1);
+    }
+
+    /**
+     * Links a node reaching above the bottom level. Runs with every other
+     * writer held off, so the spans can be split from the ranks met on the
+     * way down.
+     */
+    private void insertAlone(Player newGuy, double value, int nodeLevel) {
+        int id = newGuy.getID();
+        Node[] update = new Node[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = (i == level - 1) ? 0 : rank[i + 1];
+            while (x.next.get(i) != null && precedes(x.next.get(i), value, id)) {
+                rank[i] += x.span.get(i);
+                x = x.next.get(i);
+            }
+            update[i] = x;
+        }
+
+        if (nodeLevel > level) {
+            for (int i = level; i < nodeLevel; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                head.span.set(i, size.get());
+            }
+            level = nodeLevel;
+        }
+
+        Node node = new Node(newGuy, value, id, nodeLevel);
+        for (int i = 0; i < nodeLevel; i++) {
+            node.next.set(i, update[i].next.get(i));
+            node.span.set(i, update[i].span.get(i) - (rank[0] - rank[i]));
+            update[i].next.set(i, node);
+            update[i].span.set(i, rank[0] - rank[i] + 1);
+        }
+        for (int i = nodeLevel; i < level; i++) {
+            update[i].span.incrementAndGet(i);
+        }
+        size.incrementAndGet();
+    }
+
+    /**
+     * Removes the first node at or after the (value, ID) key that is filed
+     * under the value and, if a player is given, holds that player. The
+     * victim is marked under its own lock, its predecessors are locked and
+     * checked, and each of its links is folded into its predecessor's.
+     */
+    private boolean remove(double value, int id, Player player) {
+        Node[] preds = new Node[MAX_LEVEL];
+        long stamp = gate.readLock();
+        writes.addAndGet(STARTED);
+        try {
+            Node victim = null;
+            while (true) {
+                // once the victim is picked, search for its own key and step past any
+                // equal key linked ahead of it, so its predecessors are found again
+                int key = (victim == null) ? id : victim.id;
+                int height = (victim == null) ? 0 : victim.next.length();
+                Node pred = head;
+                Node succ = null;
+                for (int i = level - 1; i >= 0; i--) {
+                    succ = pred.next.get(i);
+                    while (succ != null && succ != victim && (precedes(succ, value, key)
+                            || (i < height && succ.value == value && succ.id == key))) {
+                        pred = succ;
+                        succ = pred.next.get(i);
+                    }
+                    preds[i] = pred;
+                }
+                if (victim == null) {
+                    if (succ == null || succ.value != value || (player != null && succ.player != player)) {
+                        return false;
+                    }
+                    succ.lock.lock();
+                    if (succ.marked) {
+                        // another writer is removing it; wait it out and look again
+                        succ.lock.unlock();
+                        if (player != null) {
+                            return false;
+                        }
+                        continue;
+                    }
+                    succ.marked = true;
+                    victim = succ;
+                    height = victim.next.length();
+                }
+
+                int locked = 0;
+                boolean valid = true;
+                for (int i = 0; valid && i < height; i++) {
+                    preds[i].lock.lock();
+                    locked++;
+                    valid = !preds[i].marked && preds[i].next.get(i) == victim;
+                }
+                try {
+                    if (valid) {
+                        for (int i = height - 1; i >= 0; i--) {
+                            preds[i].span.addAndGet(i, victim.span.get(i) - 1);
+                            preds[i].next.set(i, victim.next.get(i));
+                        }
+                    }
+                } finally {
+                    for (int i = 0; i < locked; i++) {
+                        preds[i].lock.unlock();
+                    }
+                }
+                if (valid) {
+                    victim.lock.unlock();
+                    size.decrementAndGet();
+                    adjustCovering(height, value, victim.id, -1);
+                    return true;
+                }
+            }
+        } finally {
+            writes.addAndGet(FINISHED);
+            gate.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Adds delta to the span of the link passing over the (value, ID) key on
+     * each level from the given one up, locking one link owner at a time. An
+     * owner found marked has been unlinked, with its span folded into its
+     * predecessor's, so the search starts over from the head.
+     */
+    private void adjustCovering(int fromLevel, double value, int id, int delta) {
+        Node pred = head;
+        for (int i = level - 1; i >= fromLevel; i--) {
+            while (true) {
+                Node succ = pred.next.get(i);
+                while (succ != null && precedes(succ, value, id)) {
+                    pred = succ;
+                    succ = pred.next.get(i);
+                }
+                pred.lock.lock();
+                try {
+                    if (!pred.marked) {
+                        pred.span.addAndGet(i, delta);
+                        break;
+                    }
+                } finally {
+                    pred.lock.unlock();
+                }
+                pred = descend(i, value, id);
+            }
+        }
+    }
+
+    /**
+     * Searches from the head down to the given level and returns the last
+     * node there that comes before the (value, ID) key.
+     */
+    private Node descend(int toLevel, double value, int id) {
+        Node pred = head;
+        for (int i = level - 1; i >= toLevel; i--) {
+            Node succ = pred.next.get(i);
+            while (succ != null && precedes(succ, value, id)) {
+                pred = succ;
+                succ = pred.next.get(i);
+            }
+        }
+        return pred;
+    }
+
+    /**
+     * Counts the players filed under a value greater than the given one.
+     */
+    private int countGreater(double value) {
+        int traversed = 0;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next.get(i) != null && x.next.get(i).value > value) {
+                traversed += x.span.get(i);
+                x = x.next.get(i);
+            }
+        }
+        return traversed;
+    }
+
+    /**
+     * Tells whether a node comes before the (value, ID) key on the scoreboard.
+     */
+    private static boolean precedes(Node x, double value, int id) {
+        return x.value > value || (x.value == value && x.id < id);
+    }
+
+    /**
+     * Finds the node at the given 1-based position.
+     */
+    private Node nodeAt(int position) {
+        if (position < 1 || position > size.get()) {
+            return null;
+        }
+        int traversed = 0;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next.get(i) != null && traversed + x.span.get(i) <= position) {
+                traversed += x.span.get(i);
+                x = x.next.get(i);
+            }
+            if (traversed == position) {
+                return x;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Picks a level with probability 1/4 of each extra level, as in Redis
+     * sorted sets.
+     */
+    private static int randomLevel() {
+        int nodeLevel = 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (nodeLevel < MAX_LEVEL && random.nextInt(4) == 0) {
+            nodeLevel++;
+        }
+        return nodeLevel;
+    }
+
+    private <T> T read(Supplier<T> reader) {
+        long seen = writes.get();
+        if ((int) seen == 0) {
+            try {
+                T result = reader.get();
+                if (writes.get() == seen) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (writes.get() == seen) {
+                    throw e;
+                }
+                // torn read of a list being written, retry with the writers held off
+            }
+        }
+        long stamp = gate.writeLock();
+        try {
+            return reader.get();
+        } finally {
+            gate.unlockWrite(stamp);
+        }
+    }
+
+    private int readInt(IntSupplier reader) {
+        long seen = writes.get();
+        if ((int) seen == 0) {
+            try {
+                int result = reader.getAsInt();
+                if (writes.get() == seen) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (writes.get() == seen) {
+                    throw e;
+                }
+                // torn read of a list being written, retry with the writers held off
+            }
+        }
+        long stamp = gate.writeLock();
+        try {
+            return reader.getAsInt();
+        } finally {
+            gate.unlockWrite(stamp);
+        }
+    }
+
+    private static final class Node {
+        final Player player;
+        final double value;
+        final int id;
+        final AtomicReferenceArray<Node> next;
+        final AtomicIntegerArray span;
+        final ReentrantLock lock = new ReentrantLock();
+        volatile boolean marked;
+
+        Node(Player player, double value, int id, int level) {
+            this.player = player;
+            this.value = value;
+            this.id = id;
+            this.next = new AtomicReferenceArray<>(level);
+            this.span = new AtomicIntegerArray(level);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package main;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Opt-in instrumentation of the AVLPlayerNode hot paths: rotations by case,
+ * the lengths of the descents from the root, the height of the leaderboard's
+ * ELO tree against the height of a perfectly balanced tree of the same size,
+ * and latency histograms for insert, delete, getRank, getPlayer and the
+ * scoreboard. The counts and latencies cover every AVLPlayerNode in the
+ * process; the shape only covers the tree whose owner records it through
+ * AVLPlayerNode.recordShape, which ScoreKeeper and ConcurrentLeaderboard do
+ * for the leaderboard.
+ *
+ * Metrics are off by default. While they are off every recording point costs
+ * one read of a flag and a branch that is not taken. While they are on,
+ * counts go to LongAdders and LongAccumulators, which stripe their state
+ * across cells when threads collide, so the optimistic readers of a
+ * ConcurrentLeaderboard can record without contending with each other.
+ *
+ * The metrics are exposed as MBeans named main:type=TreeMetrics and
+ * main:type=LatencyHistogram,name=(operation), and as a text dump that can be
+ * printed periodically.
+ */
+public class TreeMetrics implements TreeMetricsMBean {
+    /** The rotation cases, as indexes into the rotation counters. */
+    public static final int LEFT_LEFT = 0;
+    public static final int LEFT_RIGHT = 1;
+    public static final int RIGHT_RIGHT = 2;
+    public static final int RIGHT_LEFT = 3;
+
+    public static final LatencyHistogram INSERT = new LatencyHistogram("insert");
+    public static final LatencyHistogram DELETE = new LatencyHistogram("delete");
+    public static final LatencyHistogram GET_RANK = new LatencyHistogram("getRank");
+    public static final LatencyHistogram GET_PLAYER = new LatencyHistogram("getPlayer");
+    public static final LatencyHistogram SCOREBOARD = new LatencyHistogram("scoreboard");
+
+    private static final LatencyHistogram[] OPERATIONS = { INSERT, DELETE, GET_RANK, GET_PLAYER, SCOREBOARD };
+    private static final TreeMetrics INSTANCE = new TreeMetrics();
+
+    private static volatile boolean enabled;
+
+    private static final LongAdder[] rotations = { new LongAdder(), new LongAdder(), new LongAdder(),
+            new LongAdder() };
+    private static final LongAdder descents = new LongAdder();
+    private static final LongAdder pathSteps = new LongAdder();
+    private static final LongAccumulator maxPath = new LongAccumulator(Math::max, 0);
+    private static final DoubleAccumulator maxHeightRatio = new DoubleAccumulator(Math::max, 0);
+    // recorded by the leaderboard's writer, which holds the board's write lock where there is one
+    private static volatile int height;
+    private static volatile int size;
+
+    private TreeMetrics() {
+    }
+
+    /**
+     * @return The MBean that exposes the metrics.
+     */
+    public static TreeMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Turns recording on or off. Counts already recorded are kept.
+     */
+    public static void enable(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * @return Whether metrics are being recorded.
+     */
+    public static boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts timing an operation.
+     *
+     * @return The current System.nanoTime, or 0 if metrics are disabled, to be
+     *         passed to LatencyHistogram.stop when the operation ends.
+     */
+    public static long start() {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        return (now == 0) ? 1 : now;
+    }
+
+    /**
+     * Counts one rebalancing rotation.
+     *
+     * @param rotationCase LEFT_LEFT, LEFT_RIGHT, RIGHT_RIGHT or RIGHT_LEFT.
+     */
+    static void recordRotation(int rotationCase) {
+        if (enabled) {
+            rotations[rotationCase].increment();
+        }
+    }
+
+    /**
+     * Records the number of nodes visited by one descent from the root.
+     */
+    static void recordPath(int steps) {
+        if (enabled) {
+            descents.increment();
+            pathSteps.add(steps);
+            maxPath.accumulate(steps);
+        }
+    }
+
+    /**
+     * Records the shape of the leaderboard's tree after it changed, see
+     * AVLPlayerNode.recordShape.
+     *
+     * @param treeHeight The height of the tree in edges.
+     * @param treeSize   The number of nodes in the tree.
+     */
+    static void recordShape(int treeHeight, int treeSize) {
+        height = treeHeight;
+        size = treeSize;
+        maxHeightRatio.accumulate(heightRatio(treeHeight, treeSize));
+    }
+
+    /**
+     * The number of levels of a tree divided by the number of levels of a
+     * perfectly balanced tree of the same size: 1 for a perfect tree, and
+     * never more than about 1.44 for an AVL tree.
+     */
+    private static double heightRatio(int treeHeight, int treeSize) {
+        if (treeSize == 0) {
+            return 0;
+        }
+        return (treeHeight + 1) / (Math.log(treeSize + 1) / Math.log(2));
+    }
+
+    /**
+     * Registers the MBeans with the platform MBean server, if they are not
+     * registered already.
+     *
+     * @throws JMException If the MBeans cannot be registered.
+     */
+    public static synchronized void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("main:type=TreeMetrics");
+        if (!server.isRegistered(name)) {
+            server.registerMBean(INSTANCE, name);
+        }
+        for (LatencyHistogram operation : OPERATIONS) {
+            name = new ObjectName("main:type=LatencyHistogram,name=" + operation.getName());
+            if (!server.isRegistered(name)) {
+                server.registerMBean(operation, name);
+            }
+        }
+    }
+
+    /**
+     * Appends a dump of the metrics to out every period, on a daemon thread,
+     * until the returned executor is shut down.
+     *
+     * @param out          Where to write the dumps.
+     * @param periodMillis The time between dumps in milliseconds.
+     * @return The executor that writes the dumps.
+     */
+    public static ScheduledExecutorService startDumping(Appendable out, long periodMillis) {
+        ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tree-metrics-dumper");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> {
+            try {
+                synchronized (out) {
+                    out.append(INSTANCE.dump());
+                }
+            } catch (IOException e) {
+                dumper.shutdown();
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        return dumper;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean on) {
+        enable(on);
+    }
+
+    public long getLeftLeftRotations() {
+        return rotations[LEFT_LEFT].sum();
+    }
+
+    public long getLeftRightRotations() {
+        return rotations[LEFT_RIGHT].sum();
+    }
+
+    public long getRightRightRotations() {
+        return rotations[RIGHT_RIGHT].sum();
+    }
+
+    public long getRightLeftRotations() {
+        return rotations[RIGHT_LEFT].sum();
+    }
+
+    public long getDescents() {
+        return descents.sum();
+    }
+
+    public double getMeanPathLength() {
+        long count = descents.sum();
+        return (count == 0) ? 0 : (double) pathSteps.sum() / count;
+    }
+
+    public long getMaxPathLength() {
+        return maxPath.get();
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public double getHeightRatio() {
+        return heightRatio(height, size);
+    }
+
+    public double getMaxHeightRatio() {
+        return maxHeightRatio.get();
+    }
+
+    /**
+     * @return The metrics as text, one line per group.
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("rotations: LL=%d LR=%d RR=%d RL=%d\n", getLeftLeftRotations(),
+                getLeftRightRotations(), getRightRightRotations(), getRightLeftRotations()));
+        sb.append(String.format("descents: count=%d mean=%.2f max=%d\n", getDescents(), getMeanPathLength(),
+                getMaxPathLength()));
+        sb.append(String.format("shape: size=%d height=%d height/log2(n)=%.3f max=%.3f\n", getSize(), getHeight(),
+                getHeightRatio(), getMaxHeightRatio()));
+        for (LatencyHistogram operation : OPERATIONS) {
+            sb.append(operation).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Clears every count. Whether metrics are enabled is left as it is.
+     */
+    public void reset() {
+        for (LongAdder rotation : rotations) {
+            rotation.reset();
+        }
+        descents.reset();
+        pathSteps.reset();
+        maxPath.reset();
+        maxHeightRatio.reset();
+        height = 0;
+        size = 0;
+        for (LatencyHistogram operation : OPERATIONS) {
+            operation.reset();
+        }
+    }
+}
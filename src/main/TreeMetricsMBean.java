@@ -0,0 +1,36 @@
+package main;
+
+/**
+ * The JMX view of TreeMetrics.
+ */
+public interface TreeMetricsMBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getLeftLeftRotations();
+
+    long getLeftRightRotations();
+
+    long getRightRightRotations();
+
+    long getRightLeftRotations();
+
+    long getDescents();
+
+    double getMeanPathLength();
+
+    long getMaxPathLength();
+
+    int getHeight();
+
+    int getSize();
+
+    double getHeightRatio();
+
+    double getMaxHeightRatio();
+
+    String dump();
+
+    void reset();
+}
@@ -1,11 +1,22 @@
 package test;
 
 import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
 import org.junit.Before;
 import org.junit.Test;
 
 import main.AVLPlayerNode;
 import main.Player;
+import main.PlayerIndex;
+import main.ScoreKeeper;
 
 public class AVLPlayerNodeTest {
     private AVLPlayerNode tree;
@@ -71,20 +82,28 @@ public class AVLPlayerNodeTest {
                 tree.getRightWeight());
     }
 
-    // @Test
-    // public void testTreeHeight() {
-    // // Assuming a method 'getHeight' to get the height of the tree
-    // int expectedHeight = 1; // Determine the expected height after initial
-    // insertions
-    // assertEquals("Height should match expected value", expectedHeight,
-    // tree.getHeight());
+    @Test
+    public void testTreeHeight() {
+        int expectedHeight = 1;
+        assertEquals("Height should match expected value", expectedHeight, tree.getHeight());
+
+        // Insert Dan and check height again
+        tree = tree.insert(dan, dan.getELO());
+        expectedHeight = 2;
+        assertEquals("Height should match expected value after inserting Dan",
+                expectedHeight, tree.getHeight());
+    }
 
-    // // Insert Dan and check height again
-    // tree = tree.insert(dan, dan.getELO());
-    // expectedHeight = 1; // Update expected height after Dan's insertion
-    // assertEquals("Height should match expected value after inserting Dan",
-    // expectedHeight, tree.getHeight());
-    // }
+    @Test
+    public void testHeightStaysLogarithmicOnSortedInserts() {
+        tree = new AVLPlayerNode(new Player("P0", 0, 0.0), 0.0);
+        for (int i = 1; i < 1023; i++) {
+            tree = tree.insert(new Player("P" + i, i, i), i);
+        }
+        assertEquals("Sorted inserts should still produce a perfectly balanced tree", 9, tree.getHeight());
+        assertTrue("Balance factor of root should be between -1 and 1",
+                Math.abs(tree.getBalanceFactor()) <= 1);
+    }
 
     @Test
     public void testRightHeavyOnlyRightMembersRotation() {
@@ -157,22 +176,269 @@ public class AVLPlayerNodeTest {
 
     @Test
     public void testDeleteLeaf() {
-
+        tree = tree.delete(bob.getELO());
+        assertEquals("Leaf should be unlinked", "(Alice(Carol))", tree.treeString());
+        assertEquals("Right weight should drop after deleting the left leaf", 0, tree.getRightWeight());
+        assertEquals("Height should match expected value", 1, tree.getHeight());
     }
 
     @Test
     public void testDeleteOneChild() {
-
+        tree = tree.insert(dan, dan.getELO());
+        tree = tree.delete(carol.getELO());
+        assertEquals("Dan should take Carol's place", "((Bob)Alice(Dan))", tree.treeString());
+        assertNull("Carol should be gone", tree.getPlayer(carol.getELO()));
     }
 
     @Test
     public void testDeleteTwoChildren() {
-
+        tree = tree.insert(dan, dan.getELO());
+        tree = tree.insert(new Player("Eve", 5, 1250.0), 1250.0);
+        tree = tree.delete(carol.getELO());
+        assertEquals("Predecessor should replace the deleted node", "((Bob)Alice(Eve(Dan)))", tree.treeString());
+        assertEquals("Rank should reflect the deletion", 1, tree.getRank(dan.getELO()));
+        assertEquals("Rank should reflect the deletion", 4, tree.getRank(bob.getELO()));
     }
 
     @Test
     public void testDeleteRoot() {
+        tree = tree.delete(alice.getELO());
+        assertEquals("Predecessor should become the root", "(Bob(Carol))", tree.treeString());
+        tree = tree.delete(bob.getELO());
+        assertEquals("Only child should become the root", "(Carol)", tree.treeString());
+        assertEquals("Height should match expected value", 0, tree.getHeight());
+        assertNull("Deleting the last node should empty the tree", tree.delete(carol.getELO()));
+    }
+
+    @Test
+    public void testDeleteRebalances() {
+        tree = tree.insert(dan, dan.getELO());
+        tree = tree.delete(bob.getELO());
+        assertEquals("Tree should rotate left after deleting Bob", "((Alice)Carol(Dan))", tree.treeString());
+        assertEquals("Right weight should match expected value", 1, tree.getRightWeight());
+        assertEquals("Height should match expected value", 1, tree.getHeight());
+    }
+
+    @Test
+    public void testRank() {
+        tree = tree.insert(dan, dan.getELO());
+        assertEquals("Highest ELO should rank first", 1, tree.getRank(dan.getELO()));
+        assertEquals("Rank should match expected value", 2, tree.getRank(carol.getELO()));
+        assertEquals("Rank should match expected value", 3, tree.getRank(alice.getELO()));
+        assertEquals("Lowest ELO should rank last", 4, tree.getRank(bob.getELO()));
+        assertEquals("Unknown ELO should have no rank", 0, tree.getRank(1000.0));
+    }
+
+    @Test
+    public void testRanksAfterChurn() {
+        int n = 2000;
+        tree = new AVLPlayerNode(new Player("P0", 0, 0.0), 0.0);
+        for (int i = 1; i < n; i++) {
+            tree = tree.insert(new Player("P" + i, i, i), i);
+        }
+        for (int i = 0; i < n; i += 3) {
+            tree = tree.delete(i);
+        }
+        int remaining = 0;
+        for (int i = n - 1; i >= 0; i--) {
+            if (i % 3 == 0) {
+                assertEquals("Deleted players should have no rank", 0, tree.getRank(i));
+            } else {
+                remaining++;
+                assertEquals("Rank should match expected value", remaining, tree.getRank(i));
+            }
+        }
+        assertTrue("Tree should stay balanced through deletes", tree.getHeight() <= 1.45 * Math.log(remaining) / Math.log(2));
+        assertTrue("Balance factor of root should be between -1 and 1",
+                Math.abs(tree.getBalanceFactor()) <= 1);
+    }
+
+    @Test
+    public void testUpdateScoreInPlace() {
+        tree = tree.insert(dan, dan.getELO());
+        String before = tree.treeString();
+        tree = tree.updateScore(carol, carol.getELO(), 1350.0);
+        assertEquals("Small change should not restructure the tree", before, tree.treeString());
+        assertSame("Player should be found under the new score", carol, tree.getPlayer(1350.0));
+        assertNull("Old score should be gone", tree.getPlayer(carol.getELO()));
+        assertEquals("Rank should match expected value", 2, tree.getRank(1350.0));
+    }
+
+    @Test
+    public void testUpdateScoreRepositions() {
+        tree = tree.insert(dan, dan.getELO());
+        tree = tree.updateScore(bob, bob.getELO(), 1600.0);
+        assertEquals("Bob should move to the top", 1, tree.getRank(1600.0));
+        assertEquals("Rank should match expected value", 4, tree.getRank(alice.getELO()));
+        assertSame("Player should be found under the new score", bob, tree.getPlayer(1600.0));
+        assertTrue("Balance factor of root should be between -1 and 1",
+                Math.abs(tree.getBalanceFactor()) <= 1);
+    }
+
+    @Test
+    public void testUpdateScoreSharedScore() {
+        Player twin = new Player("Twin", 5, alice.getELO());
+        tree = tree.insert(twin, twin.getELO());
+        tree = tree.updateScore(twin, alice.getELO(), 1000.0);
+        assertSame("Only the named player should move", twin, tree.getPlayer(1000.0));
+        assertSame("The other player should keep the shared score", alice, tree.getPlayer(alice.getELO()));
+    }
+
+    @Test
+    public void testFromSorted() {
+        Player[] players = new Player[1000];
+        double[] values = new double[players.length];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new Player("P" + i, i, i / 2);
+            values[i] = i / 2;
+        }
+        tree = AVLPlayerNode.fromSorted(players, values);
+        assertEquals("Bulk build should produce a minimal height tree", 9, tree.getHeight());
+        assertTrue("Balance factor of root should be between -1 and 1",
+                Math.abs(tree.getBalanceFactor()) <= 1);
+        assertEquals("Right weight should count the left half", 500, tree.getRightWeight());
+        assertEquals("Rank should match expected value", 1, tree.getRank(499));
+        assertEquals("Shared scores should share a rank", 3, tree.getRank(498));
+        assertEquals("Rank should match expected value", 999, tree.getRank(0));
+
+        tree = tree.insert(dan, 1000.0);
+        tree = tree.delete(0.0);
+        assertEquals("Built tree should support inserts and deletes", 1, tree.getRank(1000.0));
+        assertNull("Empty input should build an empty tree", AVLPlayerNode.fromSorted(new Player[0], new double[0]));
+    }
+
+    @Test
+    public void testSelectByRank() {
+        tree = tree.insert(dan, dan.getELO());
+        assertSame("Rank 1 should be the highest ELO", dan, tree.selectByRank(1));
+        assertSame("Rank 3 should match expected player", alice, tree.selectByRank(3));
+        assertSame("Rank 4 should be the lowest ELO", bob, tree.selectByRank(4));
+        assertNull("Rank 0 should be out of range", tree.selectByRank(0));
+        assertNull("Rank past the end should be out of range", tree.selectByRank(5));
+    }
+
+    @Test
+    public void testScoreboardPage() {
+        tree = tree.insert(dan, dan.getELO());
+        String header = String.format("%-10s %-3s %s\n", "NAME", "ID", "SCORE");
+        String expected = header
+                + String.format("%-10s %-3d %.2f\n", "Carol", 3, 1300.0)
+                + String.format("%-10s %-3d %.2f\n", "Alice", 1, 1200.0);
+        assertEquals("Page should start at the offset", expected, tree.scoreboard(1, 2));
+        assertEquals("Full page should match the whole scoreboard", tree.scoreboard(), tree.scoreboard(0, 50));
+        assertEquals("Page past the end should be empty", header, tree.scoreboard(4, 10));
+    }
+
+    @Test
+    public void testWriteScoreboardMatchesFormat() throws Exception {
+        tree = tree.insert(new Player("Neg", -12, -0.005), -0.005);
+        tree = tree.insert(new Player("LongerThanTen", 12345, 1234.565), 1234.565);
+        tree = tree.insert(new Player("Half", 7, 2.675), 2.675);
+        StringBuilder expected = new StringBuilder(String.format("%-10s %-3s %s\n", "NAME", "ID", "SCORE"));
+        for (int k = 1; tree.selectByRank(k) != null; k++) {
+            Player p = tree.selectByRank(k);
+            expected.append(String.format("%-10s %-3d %.2f\n", p.getName(), p.getID(), p.getELO()));
+        }
+        assertEquals("Scoreboard should match String.format output", expected.toString(), tree.scoreboard());
+
+        StringWriter writer = new StringWriter();
+        tree.writeScoreboard(writer);
+        assertEquals("Streamed scoreboard should match scoreboard()", tree.scoreboard(), writer.toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        tree.writeScoreboard(bytes);
+        assertEquals("Streamed bytes should match scoreboard()", tree.scoreboard(), bytes.toString("UTF-8"));
+    }
+
+    @Test
+    public void testSharedScoresOrderedById() {
+        Player[] twins = new Player[50];
+        for (int i = 0; i < twins.length; i++) {
+            twins[i] = new Player("T" + i, 100 - i, 1200.0);
+            tree = tree.insert(twins[i], 1200.0);
+        }
+        assertSame("Lowest ID should be listed first among equals", alice, tree.selectByRank(2));
+        assertSame("Highest ID should be listed last among equals", twins[0], tree.selectByRank(52));
+
+        tree = tree.delete(twins[20], 1200.0);
+        tree = tree.delete(alice, alice.getELO());
+        assertSame("Exact delete should remove only the named player", twins[49], tree.selectByRank(2));
+        assertSame("Exact delete should remove only the named player", twins[19], tree.selectByRank(31));
+        assertEquals("Shared scores should share a rank", 2, tree.getRank(1200.0));
+    }
 
+    @Test
+    public void testGetRanksMatchesGetRank() {
+        Random random = new Random(21);
+        Player[] players = new Player[5000];
+        for (int i = 0; i < players.length; i++) {
+            // few distinct scores, so many players share one
+            players[i] = new Player("P" + i, i, random.nextInt(800) + 0.5 * random.nextInt(2));
+        }
+        players[0] = new Player("Zero", 0, 0.0);
+        AVLPlayerNode big = ScoreKeeper.getTree(players, true);
+
+        double[] elos = new double[20000];
+        for (int i = 0; i < elos.length; i++) {
+            elos[i] = (random.nextInt(4) == 0) ? random.nextDouble() * 900 : players[random.nextInt(5000)].getELO();
+        }
+        elos[0] = Double.NaN;
+        elos[1] = -0.0;
+        elos[2] = Double.POSITIVE_INFINITY;
+        int[] ranks = big.getRanks(elos);
+        int[] parallelRanks = big.getRanksParallel(elos);
+        for (int i = 0; i < elos.length; i++) {
+            assertEquals("Batch rank should match getRank for " + elos[i], big.getRank(elos[i]), ranks[i]);
+            assertEquals("Parallel rank should match getRank for " + elos[i], ranks[i], parallelRanks[i]);
+        }
+        assertEquals("-0.0 should rank like 0.0", big.getRank(0.0), ranks[1]);
+        assertEquals("An empty query should give no ranks", 0, big.getRanks(new double[0]).length);
+
+        PlayerIndex index = ScoreKeeper.getIndex(players);
+        int[] ids = { 7, -1, 4999, 7, 0 };
+        int[] byId = big.getRanksById(ids, index);
+        assertArrayEquals("Parallel ranks by ID should match", byId, big.getRanksByIdParallel(ids, index));
+        for (int i = 0; i < ids.length; i++) {
+            Player p = index.get(ids[i]);
+            assertEquals("Rank by ID should match getRank", (p == null) ? 0 : big.getRank(p.getELO()), byId[i]);
+        }
     }
 
+    @Test
+    public void testCountAndIterateBand() {
+        Random random = new Random(23);
+        Player[] players = new Player[3000];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new Player("P" + i, i, 1000 + random.nextInt(1000));
+        }
+        AVLPlayerNode big = ScoreKeeper.getTree(players, true);
+        Player[] sorted = big.toSortedArray();
+        double[][] bands = { { 1400, 1600 }, { 1400.5, 1400.5 }, { 1500, 1500 }, { 0, 5000 }, { 1999, 3000 },
+                { 0, 999 }, { 1600, 1400 }, { Double.NaN, 1500 } };
+        for (double[] band : bands) {
+            List<Player> expected = new ArrayList<>();
+            for (Player p : sorted) {
+                if (p.getELO() >= band[0] && p.getELO() <= band[1]) {
+                    expected.add(p);
+                }
+            }
+            String name = "[" + band[0] + ", " + band[1] + "]";
+            assertEquals("Count should match a full scan of " + name, expected.size(),
+                    big.countInRange(band[0], band[1]));
+            List<Player> listed = new ArrayList<>();
+            for (Iterator<Player> it = big.bandIterator(band[0], band[1]); it.hasNext();) {
+                listed.add(it.next());
+            }
+            assertEquals("Band should list the players of " + name + " in tree order", expected, listed);
+        }
+
+        Iterator<Player> empty = big.bandIterator(5000, 6000);
+        assertFalse("A band above every score should be empty", empty.hasNext());
+        try {
+            empty.next();
+            fail("An exhausted band should throw");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+    }
 }
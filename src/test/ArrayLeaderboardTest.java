@@ -0,0 +1,117 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import main.AVLPlayerNode;
+import main.ArrayLeaderboard;
+import main.Player;
+import main.SkipListLeaderboard;
+
+public class ArrayLeaderboardTest {
+    private ArrayLeaderboard board;
+    private Player alice, bob, carol, dan;
+
+    @Before
+    public void setUp() {
+        alice = new Player("Alice", 1, 1200.0);
+        bob = new Player("Bob", 2, 1100.0);
+        carol = new Player("Carol", 3, 1300.0);
+        dan = new Player("Dan", 4, 1500.0);
+
+        board = new ArrayLeaderboard(2);
+        board.insert(alice, alice.getELO());
+        board.insert(bob, bob.getELO());
+        board.insert(carol, carol.getELO());
+        board.insert(dan, dan.getELO());
+    }
+
+    @Test
+    public void testGetPlayerAndRank() {
+        assertSame("Player should be found by value", carol, board.getPlayer(carol.getELO()));
+        assertEquals("Highest ELO should rank first", 1, board.getRank(dan.getELO()));
+        assertEquals("Lowest ELO should rank last", 4, board.getRank(bob.getELO()));
+        assertEquals("Unknown ELO should have no rank", 0, board.getRank(1000.0));
+        assertEquals("Size should match expected value", 4, board.size());
+    }
+
+    @Test
+    public void testDelete() {
+        board.delete(carol.getELO());
+        assertNull("Carol should be gone", board.getPlayer(carol.getELO()));
+        assertEquals("Rank should reflect the deletion", 2, board.getRank(alice.getELO()));
+        assertEquals("Size should match expected value", 3, board.size());
+    }
+
+    @Test
+    public void testScoreboard() {
+        String expected = String.format("%-10s %-3s %s\n", "NAME", "ID", "SCORE")
+                + String.format("%-10s %-3d %.2f\n", "Dan", 4, 1500.0)
+                + String.format("%-10s %-3d %.2f\n", "Carol", 3, 1300.0)
+                + String.format("%-10s %-3d %.2f\n", "Alice", 1, 1200.0)
+                + String.format("%-10s %-3d %.2f\n", "Bob", 2, 1100.0);
+        assertEquals("Scoreboard should list players by decreasing ELO", expected, board.scoreboard());
+    }
+
+    @Test
+    public void testChurnStaysBalanced() {
+        board = new ArrayLeaderboard();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4096; i++) {
+                board.insert(new Player("P" + i, i, i), i);
+            }
+            for (int i = 0; i < 4096; i++) {
+                if (i % 4 != 0) {
+                    board.delete(i);
+                }
+            }
+        }
+        assertEquals("Size should match expected value", 3 * 1024, board.size());
+        assertEquals("Rank should match expected value", 1, board.getRank(4092));
+        assertTrue("Tree should stay balanced through churn", board.getHeight() <= 17);
+    }
+
+    @Test
+    public void testTieOrderMatchesOtherEngines() {
+        Random random = new Random(13);
+        List<Player> players = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            players.add(new Player("P" + i, i, 1000 + 100 * random.nextInt(3)));
+        }
+        Collections.shuffle(players, random);
+        board = new ArrayLeaderboard();
+        SkipListLeaderboard skipList = new SkipListLeaderboard();
+        AVLPlayerNode tree = null;
+        for (Player p : players) {
+            board.insert(p, p.getELO());
+            skipList.insert(p, p.getELO());
+            tree = (tree == null) ? new AVLPlayerNode(p, p.getELO()) : tree.insert(p, p.getELO());
+        }
+        assertEquals("Ties should be listed by increasing ID as in AVLPlayerNode", tree.scoreboard(),
+                board.scoreboard());
+        assertEquals("Ties should be listed as in SkipListLeaderboard", skipList.scoreboard(), board.scoreboard());
+
+        for (Player p : players.subList(0, 150)) {
+            assertTrue("A tied player should be found exactly", board.delete(p, p.getELO()));
+            assertTrue("A tied player should be found exactly", skipList.delete(p, p.getELO()));
+            tree = tree.delete(p, p.getELO());
+        }
+        Player gone = players.get(0);
+        assertFalse("A removed player should not be found again", board.delete(gone, gone.getELO()));
+        assertEquals("Exact deletes should remove the same players", tree.scoreboard(), board.scoreboard());
+        for (int k = 1; k <= 150; k++) {
+            assertSame("Ranks should hold the same players", tree.selectByRank(k), board.selectByRank(k));
+        }
+        for (double elo = 1000; elo <= 1200; elo += 100) {
+            assertEquals("Shared ranks should match", tree.getRank(elo), board.getRank(elo));
+        }
+    }
+
+}
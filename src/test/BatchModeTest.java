@@ -0,0 +1,144 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.InputMismatchException;
+
+import org.junit.Test;
+
+import main.AVLPlayerNode;
+import main.CommandReader;
+import main.MatchJournal;
+import main.Player;
+import main.PlayerIndex;
+import main.ScoreKeeper;
+
+public class BatchModeTest {
+
+    private static InputStream input(String script) {
+        return new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testReaderTokens() throws IOException {
+        CommandReader in = new CommandReader(input("  A  Zo\u00eb\t-42\r\n1200.5\n2147483647 -2147483648 x 99999999999"),
+                null);
+        assertEquals("Tokens should be split on whitespace", "A", in.next());
+        assertEquals("Tokens should be decoded as UTF-8", "Zo\u00eb", in.next());
+        assertEquals("Negative ints should be parsed", -42, in.nextInt());
+        assertEquals("Doubles should be parsed", 1200.5, in.nextDouble(), 0.0);
+        assertEquals("Largest int should be parsed", Integer.MAX_VALUE, in.nextInt());
+        assertEquals("Smallest int should be parsed", Integer.MIN_VALUE, in.nextInt());
+        try {
+            in.nextInt();
+            fail("A word is not an int");
+        } catch (InputMismatchException e) {
+            // expected
+        }
+        try {
+            in.nextInt();
+            fail("An int out of range should be rejected");
+        } catch (InputMismatchException e) {
+            // expected
+        }
+        assertNull("End of input should give null", in.next());
+        assertNull("End of input should stay null", in.next());
+    }
+
+    @Test
+    public void testReaderFlushesOnlyBeforeBlocking() throws IOException {
+        int[] flushes = new int[1];
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            script.append("R ").append(i).append('\n');
+        }
+        CommandReader in = new CommandReader(input(script.toString()), () -> flushes[0]++);
+        int tokens = 0;
+        while (in.next() != null) {
+            tokens++;
+        }
+        assertEquals("Every token should be read", 2000, tokens);
+        assertEquals("A script read in one go should flush only at its end", 1, flushes[0]);
+    }
+
+    @Test
+    public void testScriptAnswersEachCommand() throws IOException {
+        CommandReader in = new CommandReader(input("3\nAlice 1 1200\nBob 2 1100\nCarol 3 1000\n"
+                + "R 1\nE 2\nM 3 1 1\nR 3\nA Dan 4 1300.5\nD 2\nP\nL\nX\nR 1\n"), null);
+        Player[] players = ScoreKeeper.readPlayers(in);
+        assertEquals("Players should be read from the script", 3, players.length);
+        StringWriter out = new StringWriter();
+        AVLPlayerNode tree = ScoreKeeper.batchLoop(in, out, ScoreKeeper.getTree(players, true),
+                ScoreKeeper.getIndex(players), players.length, null);
+
+        Player alice = new Player("Alice", 1, 1200);
+        Player bob = new Player("Bob", 2, 1100);
+        Player carol = new Player("Carol", 3, 1000);
+        carol.logVictory(alice);
+        StringBuilder expected = new StringBuilder();
+        expected.append("ID: 1 NAME: Alice RANK: 1\n");
+        expected.append(String.format("ID: 2 NAME: Bob ELO: %f\n", bob.getELO()));
+        expected.append("ID: 3 NAME: Carol RANK: ").append(1 + (alice.getELO() > carol.getELO() ? 1 : 0) + (bob.getELO() > carol.getELO() ? 1 : 0)).append('\n');
+        expected.append("ELO tree: ").append(tree.treeString()).append('\n');
+        expected.append(tree.scoreboard()).append('\n');
+        assertEquals("Output should hold only the results, up to X", expected.toString(), out.toString());
+        assertEquals("Dan should lead", 1, tree.getRank(1300.5));
+        assertEquals("Bob should be gone", 0, tree.getRank(1100));
+    }
+
+    @Test
+    public void testBadCommandsDoNotDerailTheScript() throws IOException {
+        Player[] players = { new Player("Alice", 1, 1200), new Player("Bob", 2, 1100), new Player("Carol", 3, 1000) };
+        PlayerIndex index = ScoreKeeper.getIndex(players);
+        CommandReader in = new CommandReader(
+                input("R 9\nQ\nD 1\nM 1 1 1\nM 1 2 7\nM 1 9 0\nA Ann 1 5\nE x\nE 1\nR"), null);
+        StringWriter out = new StringWriter();
+        AVLPlayerNode tree = ScoreKeeper.batchLoop(in, out, ScoreKeeper.getTree(players, true), index,
+                players.length, null);
+        assertEquals("Every bad command should get its own error line",
+                "No player with ID 9\n" + "Invalid command\n" + "Cannot afford to lose any more people\n"
+                        + "Invalid command\n" + "Invalid command\n" + "No player with ID 9\n"
+                        + "ID 1 is already taken\n" + "Invalid command\n"
+                        + String.format("ID: 1 NAME: Alice ELO: %f\n", 1200.0) + "Invalid command\n",
+                out.toString());
+        assertEquals("The board should be unchanged", 1, tree.getRank(1200));
+        assertEquals("The ELOs should be unchanged", 1100, index.get(2).getELO(), 0.0);
+    }
+
+    @Test
+    public void testScriptChangesAreJournaled() throws IOException {
+        Path file = Files.createTempFile("batch", ".journal");
+        Files.delete(file);
+        try {
+            Player[] players = { new Player("Alice", 1, 1200), new Player("Bob", 2, 1100),
+                    new Player("Carol", 3, 1000) };
+            CommandReader in = new CommandReader(input("A Dan 4 1150\nM 1 4 1\nD 2\nA Eve 5 1300\nM 5 4 0\nX\n"),
+                    null);
+            AVLPlayerNode tree;
+            try (MatchJournal journal = new MatchJournal(file, MatchJournal.Durability.PER_EVENT, 0)) {
+                tree = ScoreKeeper.batchLoop(in, new StringWriter(), ScoreKeeper.getTree(players, true),
+                        ScoreKeeper.getIndex(players), players.length, journal);
+                assertEquals("Every change should be journaled", 5, journal.getAppended());
+            }
+
+            Player[] restored = { new Player("Alice", 1, 1200), new Player("Bob", 2, 1100),
+                    new Player("Carol", 3, 1000) };
+            PlayerIndex index = ScoreKeeper.getIndex(restored);
+            MatchJournal.Replay replay = MatchJournal.replay(file, ScoreKeeper.getTree(restored, true), index);
+            assertEquals("Both adds should be replayed", 2, replay.getAdds());
+            assertEquals("The delete should be replayed", 1, replay.getDeletes());
+            assertEquals("Replaying the journal should rebuild the script's board", tree.scoreboard(),
+                    replay.getTree().scoreboard());
+            assertNull("Bob should stay deleted", index.get(2));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
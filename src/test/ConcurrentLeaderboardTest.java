@@ -0,0 +1,185 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.text.NumberFormat;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import main.AVLPlayerNode;
+import main.ConcurrentLeaderboard;
+import main.Player;
+
+public class ConcurrentLeaderboardTest {
+    private static final String HEADER = String.format("%-10s %-3s %s\n", "NAME", "ID", "SCORE");
+
+    private static Player[] players(int n, long seed) {
+        Random random = new Random(seed);
+        Player[] players = new Player[n];
+        for (int i = 0; i < n; i++) {
+            players[i] = new Player("P" + i, i, 1000 + random.nextInt(400));
+        }
+        return players;
+    }
+
+    /**
+     * A player that runs a hook the next time a reader looks at its ELO, so a
+     * test can slip a write into the middle of an optimistic read.
+     */
+    private static final class Hooked extends Player {
+        final AtomicInteger reads = new AtomicInteger();
+        volatile Runnable hook;
+
+        Hooked(String name, int id, double elo) {
+            super(name, id, elo);
+        }
+
+        public double getELO() {
+            reads.incrementAndGet();
+            Runnable r = hook;
+            if (r != null) {
+                hook = null;
+                r.run();
+            }
+            return super.getELO();
+        }
+    }
+
+    @Test
+    public void testReadRacingAWriteFallsBackToTheLock() throws Exception {
+        ConcurrentLeaderboard board = new ConcurrentLeaderboard(players(50, 10));
+        Hooked hooked = new Hooked("Hooked", 100, 1200.5);
+        board.addPlayer(hooked);
+        hooked.hook = () -> {
+            // a writer on another thread adds a better player mid-read
+            Thread writer = new Thread(() -> board.addPlayer(new Player("Top", 101, 5000)));
+            writer.start();
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        };
+        hooked.reads.set(0);
+        int rank = board.getRank(100);
+        assertEquals("The read should have been repeated after the write", 2, hooked.reads.get());
+        assertEquals("The repeated read should see the write", board.getRank(100), rank);
+        assertNotNull("The write should have gone through", board.getPlayer(101));
+    }
+
+    @Test
+    public void testErrorsInAValidReadArePassedOn() {
+        ConcurrentLeaderboard board = new ConcurrentLeaderboard(players(50, 11));
+        Hooked hooked = new Hooked("Hooked", 100, 1200.5);
+        board.addPlayer(hooked);
+        hooked.hook = () -> {
+            throw new IllegalStateException("broken");
+        };
+        try {
+            board.getRank(100);
+            fail("An error in a read no write raced should not be swallowed");
+        } catch (IllegalStateException e) {
+            assertEquals("The reader's own exception should come through", "broken", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testReadersSeeConsistentBoardsWhileWriting() throws Exception {
+        int n = 500;
+        Player[] players = players(n, 12);
+        ConcurrentLeaderboard board = new ConcurrentLeaderboard(players);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[3];
+        Thread writer = new Thread(() -> {
+            Random random = new Random(13);
+            for (int round = 0; round < 2000; round++) {
+                board.recordMatch(random.nextInt(n), random.nextInt(n), random.nextInt(3));
+                board.addPlayer(new Player("X", n + (round % 10), 1000 + random.nextInt(400)));
+                board.removePlayer(n + random.nextInt(10));
+            }
+        });
+        for (int t = 0; t < readers.length; t++) {
+            long seed = t;
+            readers[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                // scores are written in the default locale
+                NumberFormat format = NumberFormat.getInstance();
+                try {
+                    while (writer.isAlive()) {
+                        int rank = board.getRank(random.nextInt(n));
+                        assertTrue("Every rank should be on the board: " + rank, rank >= 1 && rank <= n + 10);
+                        String[] rows = board.scoreboard(0, 20).split("\n");
+                        assertEquals("A page should be whole", 21, rows.length);
+                        double last = Double.POSITIVE_INFINITY;
+                        for (int i = 1; i < rows.length; i++) {
+                            double score = format.parse(rows[i].substring(rows[i].lastIndexOf(' ') + 1)).doubleValue();
+                            assertTrue("A page should be in order", score <= last);
+                            last = score;
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+        }
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        writer.start();
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("A reader saw an inconsistent board", failure.get());
+        }
+
+        // the same writes on one thread should give the same board
+        ConcurrentLeaderboard replay = new ConcurrentLeaderboard(players(n, 12));
+        Random random = new Random(13);
+        for (int round = 0; round < 2000; round++) {
+            replay.recordMatch(random.nextInt(n), random.nextInt(n), random.nextInt(3));
+            replay.addPlayer(new Player("X", n + (round % 10), 1000 + random.nextInt(400)));
+            replay.removePlayer(n + random.nextInt(10));
+        }
+        assertEquals("Concurrent reads should not disturb the writes", replay.scoreboard(), board.scoreboard());
+    }
+
+    @Test
+    public void testEmptyBoardPrintsTheHeader() {
+        ConcurrentLeaderboard board = new ConcurrentLeaderboard(new Player[0]);
+        assertEquals("An empty scoreboard should still have its header", HEADER, board.scoreboard());
+        assertEquals("An empty page should still have its header", HEADER, board.scoreboard(0, 10));
+        board.addPlayer(new Player("Solo", 1, 1000));
+        board.removePlayer(1);
+        assertEquals("Emptying the board should leave the header", HEADER, board.scoreboard());
+        AVLPlayerNode one = new AVLPlayerNode(new Player("Solo", 1, 1000), 1000);
+        assertEquals("The header should match the tree's", one.scoreboard().substring(0, HEADER.length()), HEADER);
+        assertEquals("An empty board has no ranks", 0, board.getRank(1));
+    }
+
+    @Test
+    public void testGetRanksMatchesGetRank() {
+        int n = 300;
+        ConcurrentLeaderboard board = new ConcurrentLeaderboard(players(n, 14));
+        int[] ids = { 5, -1, 299, 5, 0, n, 150 };
+        int[] ranks = board.getRanks(ids);
+        assertEquals("There should be one rank per ID", ids.length, ranks.length);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals("Batch rank of ID " + ids[i] + " should match getRank", board.getRank(ids[i]), ranks[i]);
+        }
+        assertEquals("An unknown ID has no rank", 0, ranks[1]);
+        assertEquals("No IDs give no ranks", 0, board.getRanks(new int[0]).length);
+
+        board.recordMatch(5, 299, 1);
+        ranks = board.getRanks(new int[] { 5, 299 });
+        assertEquals("Batch ranks should follow the board's writes", board.getRank(5), ranks[0]);
+        assertEquals("Batch ranks should follow the board's writes", board.getRank(299), ranks[1]);
+
+        ConcurrentLeaderboard empty = new ConcurrentLeaderboard(new Player[0]);
+        assertArrayEquals("An empty board ranks nobody", new int[2], empty.getRanks(new int[] { 1, 2 }));
+    }
+}
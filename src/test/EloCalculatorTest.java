@@ -0,0 +1,109 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import main.EloCalculator;
+import main.MatchBatch;
+import main.Player;
+
+public class EloCalculatorTest {
+    private static final double TOLERANCE = 1e-9;
+
+    // the original Player math: two Math.pow calls and a ratio per player
+    private static double[] powWin(double winner, double loser) {
+        double theirELO = Math.pow(10.0, winner / 400.0);
+        double myELO = Math.pow(10.0, loser / 400.0);
+        double totalSkill = myELO + theirELO;
+        return new double[] { winner + 32.0 * (1.0 - theirELO / totalSkill), loser - 32.0 * (myELO / totalSkill) };
+    }
+
+    private static double[] powDraw(double first, double second) {
+        double theirELO = Math.pow(10.0, first / 400.0);
+        double myELO = Math.pow(10.0, second / 400.0);
+        double totalSkill = myELO + theirELO;
+        return new double[] { first + 32.0 * (0.5 - theirELO / totalSkill),
+                second + 32.0 * (0.5 - myELO / totalSkill) };
+    }
+
+    @Test
+    public void testMatchesPowFormula() {
+        EloCalculator calc = new EloCalculator();
+        Random random = new Random(14);
+        for (int i = 0; i < 100000; i++) {
+            double a = random.nextDouble() * 5000 - 1000;
+            double b = a + random.nextDouble() * 9998 - 4999;
+            double[] win = powWin(a, b);
+            double points = calc.winPoints(a, b);
+            assertEquals("Winner should match pow formula", win[0], a + points, TOLERANCE);
+            assertEquals("Loser should match pow formula", win[1], b - points, TOLERANCE);
+            double[] draw = powDraw(a, b);
+            points = calc.drawPoints(a, b);
+            assertEquals("Draw should match pow formula", draw[0], a + points, TOLERANCE);
+            assertEquals("Draw should match pow formula", draw[1], b - points, TOLERANCE);
+        }
+    }
+
+    @Test
+    public void testPlayerUsesCalculator() {
+        Player alice = new Player("Alice", 1, 1200.0);
+        Player bob = new Player("Bob", 2, 1100.0);
+        double[] win = powWin(1200.0, 1100.0);
+        alice.logVictory(bob);
+        assertEquals("Winner should match pow formula", win[0], alice.getELO(), TOLERANCE);
+        assertEquals("Loser should match pow formula", win[1], bob.getELO(), TOLERANCE);
+        double[] draw = powDraw(bob.getELO(), alice.getELO());
+        bob.stalemate(alice);
+        assertEquals("Draw should match pow formula", draw[0], bob.getELO(), TOLERANCE);
+        assertEquals("Draw should match pow formula", draw[1], alice.getELO(), TOLERANCE);
+    }
+
+    @Test
+    public void testBatchMatchesSequentialPlay() {
+        EloCalculator calc = new EloCalculator();
+        Random random = new Random(7);
+        int n = 50;
+        int matches = 2000;
+        double[] ratings = new double[n];
+        Player[] players = new Player[n];
+        for (int i = 0; i < n; i++) {
+            ratings[i] = 1000 + random.nextInt(1000);
+            players[i] = new Player("P" + i, i, ratings[i]);
+        }
+        int[] first = new int[matches];
+        int[] second = new int[matches];
+        int[] outcomes = new int[matches];
+        for (int i = 0; i < matches; i++) {
+            first[i] = random.nextInt(n);
+            second[i] = (first[i] + 1 + random.nextInt(n - 1)) % n;
+            outcomes[i] = random.nextInt(3);
+            if (outcomes[i] == MatchBatch.FIRST_WINS) {
+                players[first[i]].logVictory(players[second[i]]);
+            } else if (outcomes[i] == MatchBatch.SECOND_WINS) {
+                players[second[i]].logVictory(players[first[i]]);
+            } else {
+                players[first[i]].stalemate(players[second[i]]);
+            }
+        }
+        calc.applyMatches(ratings, first, second, outcomes, matches);
+        for (int i = 0; i < n; i++) {
+            assertEquals("Batch should match sequential play", players[i].getELO(), ratings[i], TOLERANCE);
+        }
+    }
+
+    @Test
+    public void testKFactor() {
+        EloCalculator calc = new EloCalculator(16.0);
+        assertEquals("Even match should move half of K", 8.0, calc.winPoints(1500.0, 1500.0), 0.0);
+        assertEquals("Even draw should move nothing", 0.0, calc.drawPoints(1500.0, 1500.0), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidKFactor() {
+        new EloCalculator(0.0);
+    }
+
+}
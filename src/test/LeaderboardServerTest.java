@@ -0,0 +1,171 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import main.ConcurrentLeaderboard;
+import main.LeaderboardServer;
+import main.LoadGenerator;
+import main.MatchJournal;
+import main.Player;
+import main.ScoreKeeper;
+
+public class LeaderboardServerTest {
+    private ConcurrentLeaderboard board;
+    private LeaderboardServer server;
+    private Socket socket;
+    private BufferedReader in;
+    private PrintWriter out;
+
+    private static Player[] players() {
+        Player[] players = new Player[100];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new Player("P" + i, i, 1000 + 10 * i);
+        }
+        return players;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        board = new ConcurrentLeaderboard(players());
+        server = new LeaderboardServer(board, 0);
+        connect();
+    }
+
+    private void connect() throws IOException {
+        socket = new Socket("localhost", server.getPort());
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        out = new PrintWriter(socket.getOutputStream(), true);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        socket.close();
+        server.close();
+    }
+
+    /**
+     * Sends one request and reads its response, without the closing blank line.
+     */
+    private String request(String line) throws IOException {
+        out.println(line);
+        StringBuilder response = new StringBuilder();
+        String l;
+        while ((l = in.readLine()) != null && !l.isEmpty()) {
+            response.append(l).append('\n');
+        }
+        return response.toString();
+    }
+
+    @Test
+    public void testCommands() throws IOException {
+        assertEquals("Rank should be reported", "ID: 99 NAME: P99 RANK: 1\n", request("R 99"));
+        assertEquals("ELO should be reported", String.format("ID: 0 NAME: P0 ELO: %f\n", 1000.0), request("E 0"));
+        assertEquals("Add should succeed", "OK\n", request("A Zed 500 5000"));
+        assertEquals("Taken ID should be refused", "ERR id taken\n", request("A Zed 500 5000"));
+        assertEquals("New player should lead", "ID: 500 NAME: Zed RANK: 1\n", request("R 500"));
+        assertEquals("Match should succeed", "OK\n", request("M 0 500 1"));
+        assertEquals("Winner should climb", board.getRank(0), Integer.parseInt(request("R 0").trim().split(" ")[5]));
+        assertEquals("Page should match the board", board.scoreboard(0, 2), request("L 0 2"));
+        assertEquals("Delete should succeed", "OK\n", request("D 500"));
+        assertEquals("Deleted player should be gone", "ERR no such player\n", request("R 500"));
+        assertEquals("Unknown player should be refused", "ERR no such player\n", request("M 0 500 1"));
+        assertEquals("Bad outcome should be refused", "ERR invalid outcome\n", request("M 0 1 7"));
+        assertEquals("Malformed command should be refused", "ERR malformed command\n", request("R x"));
+        assertEquals("Unknown command should be refused", "ERR invalid command\n", request("Q"));
+        assertTrue("Tree should be printed", request("P").startsWith("ELO tree: ("));
+        assertEquals("Exit should close the connection", "BYE\n", request("X"));
+        assertNull("Connection should be closed", in.readLine());
+    }
+
+    @Test
+    public void testLoadKeepsBoardConsistent() throws Exception {
+        double total = 0;
+        for (int i = 0; i < 100; i++) {
+            total += board.getPlayer(i).getELO();
+        }
+        LoadGenerator.Report report = LoadGenerator.run("localhost", server.getPort(), 16, 500, 100, 20);
+        assertTrue("Requests should be answered", report.getRequests() > 0);
+        assertEquals("No request should fail", 0, report.getErrors());
+
+        double after = 0;
+        for (int i = 0; i < 100; i++) {
+            Player p = board.getPlayer(i);
+            after += p.getELO();
+            assertSame("Every player should be ranked under its score", p,
+                    board.selectByRank(board.getRank(i)));
+        }
+        assertEquals("Matches should move points, not create them", total, after, 1e-6);
+    }
+
+    @Test
+    public void testWritesAreJournaled() throws Exception {
+        socket.close();
+        server.close();
+        Path file = Files.createTempFile("server", ".journal");
+        Files.delete(file);
+        try {
+            MatchJournal journal = new MatchJournal(file, MatchJournal.Durability.ON_FLUSH, 0);
+            board = new ConcurrentLeaderboard(players());
+            server = new LeaderboardServer(board, 0, journal);
+            connect();
+            assertEquals("Add should succeed", "OK\n", request("A Zed 500 1500"));
+            assertEquals("Match should succeed", "OK\n", request("M 500 3 1"));
+            assertEquals("A refused write should not be journaled", "ERR id taken\n", request("A Zed 500 1500"));
+            LoadGenerator.Report report = LoadGenerator.run("localhost", server.getPort(), 8, 300, 100, 50);
+            assertEquals("No request should fail", 0, report.getErrors());
+            assertEquals("Delete should succeed", "OK\n", request("D 7"));
+            assertEquals("Match should succeed after the load", "OK\n", request("M 3 500 0"));
+            socket.close();
+            server.close();
+            assertTrue("Answered writes should already be on disk", journal.getSyncs() > 0);
+            journal.close();
+
+            Player[] restored = players();
+            MatchJournal.Replay replay = MatchJournal.replay(file, ScoreKeeper.getTree(restored, true),
+                    ScoreKeeper.getIndex(restored));
+            assertEquals("The add should be replayed", 1, replay.getAdds());
+            assertEquals("The delete should be replayed", 1, replay.getDeletes());
+            assertEquals("Replaying the journal should rebuild the served board", board.scoreboard(),
+                    replay.getTree().scoreboard());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testRankIsReadWithThePlayer() throws IOException {
+        ConcurrentLeaderboard.Ranked ranked = board.getRanked(42);
+        assertEquals("The player should be found", "P42", ranked.getPlayer().getName());
+        assertEquals("The rank should be the player's", board.getRank(42), ranked.getRank());
+        assertNull("An unknown player has no rank", board.getRanked(1000));
+        assertEquals("The server should answer from the same read",
+                "ID: 42 NAME: P42 RANK: " + ranked.getRank() + "\n", request("R 42"));
+    }
+
+    @Test
+    public void testLoadGeneratorRejectsBadArguments() throws Exception {
+        int[][] bad = { { 0, 100, 20 }, { 4, 1, 20 }, { 4, 100, -1 }, { 4, 100, 101 } };
+        for (int[] args : bad) {
+            try {
+                LoadGenerator.run("localhost", server.getPort(), args[0], 10, args[1], args[2]);
+                fail("Bad arguments should be refused: " + Arrays.toString(args));
+            } catch (IllegalArgumentException e) {
+                assertTrue("The error should show the usage", e.getMessage().contains("usage: LoadGenerator"));
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package test;
+
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import main.AVLPlayerNode;
+import main.MatchBatch;
+import main.Player;
+import main.PlayerIndex;
+import main.ScoreKeeper;
+
+public class MatchBatchTest {
+    private Player[] players;
+    private AVLPlayerNode tree;
+    private PlayerIndex index;
+
+    @Before
+    public void setUp() {
+        players = new Player[] { new Player("Alice", 1, 1200.0), new Player("Bob", 2, 1100.0),
+                new Player("Carol", 3, 1300.0), new Player("Dan", 4, 1500.0) };
+        tree = ScoreKeeper.getTree(players, true);
+        index = ScoreKeeper.getIndex(players);
+    }
+
+    @Test
+    public void testMatchesApplyInOrder() {
+        Player a = new Player("A", 1, 1200.0);
+        Player b = new Player("B", 2, 1100.0);
+        a.logVictory(b);
+        b.stalemate(a);
+
+        MatchBatch batch = new MatchBatch();
+        batch.add(1, 2, MatchBatch.FIRST_WINS);
+        batch.add(2, 1, MatchBatch.DRAW);
+        MatchBatch.Result result = batch.apply(tree, index);
+        tree = result.getTree();
+
+        assertEquals("Alice should match sequential play", a.getELO(), players[0].getELO(), 0.0);
+        assertEquals("Bob should match sequential play", b.getELO(), players[1].getELO(), 0.0);
+        assertSame("Alice should be filed under her final score", players[0], tree.getPlayer(a.getELO()));
+        assertSame("Bob should be filed under his final score", players[1], tree.getPlayer(b.getELO()));
+    }
+
+    @Test
+    public void testPlayersRepositionedOnce() {
+        MatchBatch batch = new MatchBatch(1);
+        for (int i = 0; i < 10; i++) {
+            batch.add(4, 2, MatchBatch.SECOND_WINS);
+        }
+        batch.add(1, 99, MatchBatch.FIRST_WINS);
+        MatchBatch.Result result = batch.apply(tree, index);
+        tree = result.getTree();
+
+        assertEquals("Matches applied should match expected value", 10, result.getMatchesApplied());
+        assertEquals("Unknown ID should be skipped", 1, result.getMatchesSkipped());
+        assertEquals("Players touched should match expected value", 2, result.getPlayersTouched());
+        assertFalse("A small board should be updated node by node", result.isRebuilt());
+        assertEquals("Each player should move once", 2, result.getNodesMoved());
+        assertEquals("Bob should now lead", 1, tree.getRank(players[1].getELO()));
+        assertEquals("Old scores should be gone", 0, tree.getRank(1100.0));
+    }
+
+    @Test
+    public void testSmallAndLargeBatchesAgree() {
+        Player[] many = new Player[1000];
+        for (int i = 0; i < many.length; i++) {
+            many[i] = new Player("P" + i, i, 1000 + (i * 37) % 500);
+        }
+        AVLPlayerNode manyTree = ScoreKeeper.getTree(many, true);
+        PlayerIndex manyIndex = ScoreKeeper.getIndex(many);
+
+        // a few players move node by node, most of them through a rebuild
+        for (int matches : new int[] { 5, 800 }) {
+            MatchBatch batch = new MatchBatch();
+            for (int i = 0; i < matches; i++) {
+                batch.add(i, (i * 7 + 1) % many.length, i % 3);
+            }
+            MatchBatch.Result result = batch.apply(manyTree, manyIndex);
+            manyTree = result.getTree();
+            assertEquals("Only the large batch should rebuild", matches == 800, result.isRebuilt());
+            if (result.isRebuilt()) {
+                assertEquals("A rebuild should count every node as moved", many.length, result.getNodesMoved());
+            } else {
+                assertTrue("Node by node, at most the touched players move",
+                        result.getNodesMoved() <= result.getPlayersTouched());
+            }
+            assertEquals("Scoreboard should match a fresh build", ScoreKeeper.getTree(many, true).scoreboard(),
+                    manyTree.scoreboard());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidOutcome() {
+        new MatchBatch().add(1, 2, 3);
+    }
+
+}
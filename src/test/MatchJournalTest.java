@@ -0,0 +1,254 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.Scanner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import main.AVLPlayerNode;
+import main.MatchBatch;
+import main.MatchJournal;
+import main.Player;
+import main.PlayerIndex;
+import main.PlayerSnapshot;
+import main.ScoreKeeper;
+
+public class MatchJournalTest {
+    private static final int PLAYERS = 200;
+    // the header, and a match record with its type byte and checksum
+    private static final int HEADER_BYTES = 8;
+    private static final int MATCH_BYTES = 30;
+
+    private Path file;
+    private Player[] live, restored;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("matches", ".journal");
+        Files.delete(file);
+        live = new Player[PLAYERS];
+        restored = new Player[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            live[i] = new Player("P" + i, i, 1000 + 5 * i);
+            restored[i] = new Player("P" + i, i, 1000 + 5 * i);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Plays random matches on the live players and journals them.
+     */
+    private void play(MatchJournal journal, int matches, long seed) throws IOException {
+        Random random = new Random(seed);
+        for (int i = 0; i < matches; i++) {
+            Player a = live[random.nextInt(PLAYERS)];
+            Player b = live[random.nextInt(PLAYERS)];
+            if (a == b) {
+                continue;
+            }
+            int outcome = random.nextInt(3);
+            if (outcome == MatchBatch.FIRST_WINS) {
+                a.logVictory(b);
+            } else if (outcome == MatchBatch.SECOND_WINS) {
+                b.logVictory(a);
+            } else {
+                a.stalemate(b);
+            }
+            journal.append(a.getID(), b.getID(), outcome, a.getELO(), b.getELO());
+        }
+    }
+
+    @Test
+    public void testReplayRestoresScores() throws IOException {
+        try (MatchJournal journal = new MatchJournal(file, MatchJournal.Durability.EVERY_EVENTS, 100)) {
+            play(journal, 100000, 17);
+        }
+        PlayerIndex index = ScoreKeeper.getIndex(restored);
+        MatchJournal.Replay replay = MatchJournal.replay(file, ScoreKeeper.getTree(restored, true), index);
+        AVLPlayerNode expected = ScoreKeeper.getTree(live, true);
+        assertEquals("Replay should restore the scoreboard", expected.scoreboard(), replay.getTree().scoreboard());
+        for (Player p : live) {
+            assertEquals("Replay should restore every ELO", p.getELO(), index.get(p.getID()).getELO(), 0.0);
+        }
+        assertTrue("Replay should report its rate", replay.getMatchesPerSecond() > 0);
+    }
+
+    @Test
+    public void testTornTailIsDropped() throws IOException {
+        long appended;
+        try (MatchJournal journal = new MatchJournal(file, MatchJournal.Durability.PER_EVENT, 0)) {
+            play(journal, 50, 3);
+            appended = journal.getAppended();
+        }
+        long whole = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(whole - 5);
+        }
+        PlayerIndex index = ScoreKeeper.getIndex(restored);
+        MatchJournal.Replay replay = MatchJournal.replay(file, ScoreKeeper.getTree(restored, true), index);
+        assertEquals("Only whole records should be replayed", appended - 1, replay.getMatches());
+
+        // reopening cuts the torn record off, so new records follow whole ones
+        try (MatchJournal journal = new MatchJournal(file, MatchJournal.Durability.PER_EVENT, 0)) {
+            assertTrue("Torn record should be cut off", Files.size(file) < whole);
+            journal.append(0, 1, MatchBatch.DRAW, 1000, 1005);
+        }
+    }
+
+    @Test
+    public void testEveryEventsSyncsInGroups() throws IOException {
+        try (MatchJournal journal = new MatchJournal(file, MatchJournal.Durability.EVERY_EVENTS, 10)) {
+            for (int i = 0; i < 100; i++) {
+                journal.append(0, 1, MatchBatch.DRAW, 1000, 1005);
+            }
+            assertEquals("Every tenth append should sync", 10, journal.getSyncs());
+        }
+    }
+
+    @Test
+    public void testConcurrentAppendsShareSyncs() throws Exception {
+        int threads = 8;
+        int perThread = 200;
+        try (MatchJournal journal = new MatchJournal(file, MatchJournal.Durability.PER_EVENT, 0)) {
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                workers[t] = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < perThread; i++) {
+                            journal.append(0, 1, MatchBatch.DRAW, 1000, 1005);
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                workers[t].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            assertEquals("Every append should be logged", threads * perThread, journal.getAppended());
+            assertTrue("Concurrent appends should share syncs: " + journal.getSyncs(),
+                    journal.getSyncs() < threads * perThread);
+        }
+        assertEquals("Every record should be on disk", HEADER_BYTES + (long) MATCH_BYTES * threads * perThread,
+                Files.size(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReplayRejectsOtherLeaderboard() throws IOException {
+        try (MatchJournal journal = new MatchJournal(file, MatchJournal.Durability.PER_EVENT, 0)) {
+            play(journal, 10, 5);
+        }
+        for (int i = 0; i < PLAYERS; i++) {
+            restored[i] = new Player("P" + i, i, 1500);
+        }
+        MatchJournal.replay(file, ScoreKeeper.getTree(restored, true), ScoreKeeper.getIndex(restored));
+    }
+
+    @Test
+    public void testEveryMillisSyncsInTheBackground() throws Exception {
+        int records = 1000;
+        try (MatchJournal journal = new MatchJournal(file, MatchJournal.Durability.EVERY_MILLIS, 10)) {
+            for (int i = 0; i < records; i++) {
+                journal.append(0, 1, MatchBatch.DRAW, 1000, 1005);
+            }
+            assertTrue("Appends should not wait for their own syncs", journal.getSyncs() < records);
+            long whole = HEADER_BYTES + (long) MATCH_BYTES * records;
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            // the flusher writes before it forces, so wait for both
+            while ((Files.size(file) < whole || journal.getSyncs() == 0) && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals("The flusher should write every record without a close", whole, Files.size(file));
+            assertTrue("The flusher should have synced", journal.getSyncs() > 0);
+        }
+    }
+
+    @Test
+    public void testReplayFollowsAddsAndDeletes() throws IOException {
+        Random random = new Random(23);
+        PlayerIndex liveIndex = ScoreKeeper.getIndex(live);
+        AVLPlayerNode liveTree = ScoreKeeper.getTree(live, true);
+        int nextId = PLAYERS;
+        try (MatchJournal journal = new MatchJournal(file, MatchJournal.Durability.PER_EVENT, 0)) {
+            for (int i = 0; i < 2000; i++) {
+                int kind = random.nextInt(10);
+                if (kind == 0) {
+                    // a new player, who may play straight away
+                    Player p = new Player("N\u00e9" + nextId, nextId++, 1000 + random.nextInt(500));
+                    liveIndex.put(p);
+                    liveTree = liveTree.insert(p, p.getELO());
+                    journal.appendAdd(p);
+                } else if (kind == 1) {
+                    Player p = liveIndex.remove(random.nextInt(nextId));
+                    if (p != null) {
+                        liveTree = liveTree.delete(p, p.getELO());
+                        journal.appendDelete(p.getID());
+                    }
+                } else {
+                    Player a = liveIndex.get(random.nextInt(nextId));
+                    Player b = liveIndex.get(random.nextInt(nextId));
+                    if (a == null || b == null || a == b) {
+                        continue;
+                    }
+                    double oldA = a.getELO();
+                    double oldB = b.getELO();
+                    a.logVictory(b);
+                    liveTree = liveTree.updateScore(a, oldA, a.getELO()).updateScore(b, oldB, b.getELO());
+                    journal.append(a.getID(), b.getID(), MatchBatch.FIRST_WINS, a.getELO(), b.getELO());
+                }
+            }
+        }
+        PlayerIndex index = ScoreKeeper.getIndex(restored);
+        MatchJournal.Replay replay = MatchJournal.replay(file, ScoreKeeper.getTree(restored, true), index);
+        assertEquals("Replay should restore adds, deletes and matches in order", liveTree.scoreboard(),
+                replay.getTree().scoreboard());
+        assertEquals("Replay should restore the index", liveIndex.size(), index.size());
+        assertTrue("Replay should count the adds and deletes", replay.getAdds() > 0 && replay.getDeletes() > 0);
+    }
+
+    @Test
+    public void testDriverLoopCrashIsReplayed() throws IOException {
+        Path snapshot = Files.createTempFile("players", ".snapshot");
+        PrintStream console = System.out;
+        try {
+            Player[] start = { new Player("Ann", 1, 1200), new Player("Ben", 2, 1100), new Player("Cy", 3, 1000) };
+            PlayerSnapshot.write(snapshot, ScoreKeeper.getTree(start, true));
+            AVLPlayerNode tree;
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            try (MatchJournal journal = new MatchJournal(file, MatchJournal.Durability.PER_EVENT, 0)) {
+                Scanner script = new Scanner("A Dee 4 1150 M 1 4 1 D 2 A Eve 5 1300 M 5 4 0 X");
+                tree = ScoreKeeper.driverLoop(script, ScoreKeeper.getTree(start, true), ScoreKeeper.getIndex(start), 3,
+                        journal);
+            }
+            // the process dies here, before the snapshot is written back
+
+            PlayerSnapshot loaded = PlayerSnapshot.load(snapshot);
+            PlayerIndex index = loaded.buildIndex();
+            MatchJournal.Replay replay = MatchJournal.replay(file, loaded.buildTree(), index);
+            assertEquals("The journal should restore the board the loop left", tree.scoreboard(),
+                    replay.getTree().scoreboard());
+            assertNull("The deleted player should stay deleted", index.get(2));
+            assertEquals("The added players should be back", "Eve", index.get(5).getName());
+        } finally {
+            System.setOut(console);
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+}
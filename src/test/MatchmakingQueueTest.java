@@ -0,0 +1,106 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import main.MatchmakingQueue;
+import main.Player;
+
+public class MatchmakingQueueTest {
+    private long now;
+    private MatchmakingQueue queue;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        // 50 points at first, 10 more per second, never more than 200
+        queue = new MatchmakingQueue(50, 10, 200, () -> now);
+    }
+
+    @Test
+    public void testPairsClosestWithinWindow() {
+        assertNull("A lone player should wait", queue.join(new Player("A", 1, 1000)));
+        assertNull("A player too far away should wait", queue.join(new Player("B", 2, 1100)));
+        MatchmakingQueue.Pairing pairing = queue.join(new Player("C", 3, 1060));
+        assertNotNull("A player within 50 of someone should be paired", pairing);
+        assertEquals("The closest player should be chosen", 2, pairing.getFirst().getID());
+        assertEquals("The newcomer should be second", 3, pairing.getSecond().getID());
+        assertEquals("Distance should be reported", 40, pairing.getDistance(), 0.0);
+        assertEquals("Both players should leave the queue", 1, queue.size());
+        assertEquals("The other player should still wait", 1, queue.getWaiting().get(0).getID());
+    }
+
+    @Test
+    public void testWindowWidensWithWaiting() {
+        queue.join(new Player("A", 1, 1000));
+        queue.join(new Player("B", 2, 1120));
+        assertTrue("Nothing should pair at first", queue.matchWaiting().isEmpty());
+        now += TimeUnit.SECONDS.toNanos(5);
+        assertTrue("A 100 point window should not reach 120", queue.matchWaiting().isEmpty());
+        now += TimeUnit.SECONDS.toNanos(3);
+        List<MatchmakingQueue.Pairing> pairings = queue.matchWaiting();
+        assertEquals("A 130 point window should reach 120", 1, pairings.size());
+        assertEquals("Wait should be reported", TimeUnit.SECONDS.toNanos(8), pairings.get(0).getWaitNanos());
+        assertEquals("The queue should be empty", 0, queue.size());
+
+        queue.join(new Player("C", 3, 1000));
+        now += TimeUnit.SECONDS.toNanos(60);
+        MatchmakingQueue.Pairing late = queue.join(new Player("D", 4, 1190));
+        assertNotNull("A newcomer should be accepted within the waiting player's wider window", late);
+        assertNull("The window should be capped", queue.join(new Player("E", 5, 5000)));
+        now += TimeUnit.SECONDS.toNanos(600);
+        assertNull("The cap should hold however long the wait",
+                queue.join(new Player("F", 6, 5201)));
+    }
+
+    @Test
+    public void testLeaveAndRejoin() {
+        Player a = new Player("A", 1, 1000);
+        queue.join(a);
+        try {
+            queue.join(a);
+            fail("A waiting player should not join twice");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertTrue("A waiting player should be able to leave", queue.leave(1));
+        assertFalse("A player should only leave once", queue.leave(1));
+        assertNull("An empty queue should leave the player waiting", queue.join(a));
+        assertNotNull("A close player should be paired", queue.join(new Player("B", 2, 1000)));
+    }
+
+    @Test
+    public void testEveryPlayerPairedOnce() {
+        Random random = new Random(24);
+        Set<Integer> paired = new HashSet<>();
+        List<MatchmakingQueue.Pairing> pairings = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            MatchmakingQueue.Pairing pairing = queue.join(new Player("P" + i, i, 800 + random.nextInt(1600)));
+            if (pairing != null) {
+                pairings.add(pairing);
+            }
+            now += TimeUnit.MILLISECONDS.toNanos(1);
+            if (i % 1000 == 0) {
+                pairings.addAll(queue.matchWaiting());
+            }
+        }
+        for (MatchmakingQueue.Pairing pairing : pairings) {
+            assertTrue("No player should be paired twice", paired.add(pairing.getFirst().getID()));
+            assertTrue("No player should be paired twice", paired.add(pairing.getSecond().getID()));
+            assertTrue("Pairings should respect the widest window", pairing.getDistance() <= 200);
+        }
+        assertEquals("Every player should be paired or waiting", 20000, paired.size() + queue.size());
+        for (Player p : queue.getWaiting()) {
+            assertFalse("A waiting player should not also be paired", paired.contains(p.getID()));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package test;
+
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import main.AVLPlayerNode;
+import main.PersistentLeaderboard;
+import main.Player;
+
+public class PersistentLeaderboardTest {
+    private PersistentLeaderboard board;
+    private Player alice, bob, carol, dan;
+
+    @Before
+    public void setUp() {
+        alice = new Player("Alice", 1, 1200.0);
+        bob = new Player("Bob", 2, 1100.0);
+        carol = new Player("Carol", 3, 1300.0);
+        dan = new Player("Dan", 4, 1500.0);
+        board = new PersistentLeaderboard(new Player[] { alice, bob, carol });
+    }
+
+    @Test
+    public void testMatchesAVLPlayerNode() {
+        AVLPlayerNode tree = new AVLPlayerNode(alice, alice.getELO());
+        tree = tree.insert(bob, bob.getELO());
+        tree = tree.insert(carol, carol.getELO());
+        tree = tree.insert(dan, dan.getELO());
+        board.insert(dan, dan.getELO());
+
+        PersistentLeaderboard.Snapshot snapshot = board.snapshot();
+        assertEquals("Tree shape should match AVLPlayerNode", tree.treeString(), snapshot.treeString());
+        assertEquals("Scoreboard should match AVLPlayerNode", tree.scoreboard(), snapshot.scoreboard());
+        assertEquals("Page should match AVLPlayerNode", tree.scoreboard(1, 2), snapshot.scoreboard(1, 2));
+        assertEquals("Rank should match expected value", 3, snapshot.getRank(alice.getELO()));
+        assertSame("Rank 2 should match expected player", carol, snapshot.selectByRank(2));
+    }
+
+    @Test
+    public void testSnapshotIsolation() {
+        PersistentLeaderboard.Snapshot before = board.snapshot();
+        board.insert(dan, dan.getELO());
+        assertTrue("Delete should find Bob", board.delete(bob, bob.getELO()));
+        assertTrue("Update should find Alice", board.updateScore(alice, alice.getELO(), 1400.0));
+
+        assertEquals("Old snapshot should be unchanged", "((Bob)Alice(Carol))", before.treeString());
+        assertEquals("Old snapshot should keep its size", 3, before.size());
+        assertEquals("Old snapshot should keep old ranks", 2, before.getRank(alice.getELO()));
+
+        PersistentLeaderboard.Snapshot after = board.snapshot();
+        assertEquals("New snapshot should see the writes", 3, after.size());
+        assertEquals("Alice should have moved up", 2, after.getRank(1400.0));
+        assertEquals("Bob should be gone", 0, after.getRank(bob.getELO()));
+    }
+
+    @Test
+    public void testDeleteSharedScore() {
+        Player twin = new Player("Twin", 5, alice.getELO());
+        board.insert(twin, twin.getELO());
+        assertTrue("Delete should find the twin", board.delete(twin, twin.getELO()));
+        assertFalse("Deleting twice should find nothing", board.delete(twin, twin.getELO()));
+        assertSame("Alice should keep her node", alice, board.snapshot().getPlayer(alice.getELO()));
+    }
+
+    @Test
+    public void testStaysBalanced() {
+        board = new PersistentLeaderboard();
+        Player[] players = new Player[4096];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new Player("P" + i, i, i);
+            board.insert(players[i], i);
+        }
+        for (int i = 0; i < players.length; i += 2) {
+            board.delete(players[i], i);
+        }
+        PersistentLeaderboard.Snapshot snapshot = board.snapshot();
+        assertEquals("Size should match expected value", 2048, snapshot.size());
+        assertTrue("Tree should stay balanced", snapshot.getHeight() <= 16);
+        assertEquals("Rank should match expected value", 1, snapshot.getRank(4095));
+    }
+
+}
@@ -0,0 +1,59 @@
+package test;
+
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import main.Player;
+import main.PlayerIndex;
+
+public class PlayerIndexTest {
+    private PlayerIndex index;
+
+    @Before
+    public void setUp() {
+        index = new PlayerIndex();
+    }
+
+    @Test
+    public void testPutAndGet() {
+        Player alice = new Player("Alice", 1, 1200.0);
+        assertNull("New ID should not replace anything", index.put(alice));
+        assertSame("Player should be found by ID", alice, index.get(1));
+        assertNull("Unknown ID should not be found", index.get(2));
+        assertEquals("Size should match expected value", 1, index.size());
+    }
+
+    @Test
+    public void testPutReplaces() {
+        Player alice = new Player("Alice", 1, 1200.0);
+        Player other = new Player("Other", 1, 1000.0);
+        index.put(alice);
+        assertSame("Old player should be returned", alice, index.put(other));
+        assertSame("New player should be stored", other, index.get(1));
+        assertEquals("Size should not grow on replace", 1, index.size());
+    }
+
+    @Test
+    public void testRemoveKeepsProbeRunsReachable() {
+        int n = 5000;
+        for (int i = 0; i < n; i++) {
+            index.put(new Player("P" + i, i * 16, i));
+        }
+        for (int i = 0; i < n; i += 2) {
+            assertEquals("Removed player should be returned", i * 16, index.remove(i * 16).getID());
+        }
+        assertNull("Removing twice should find nothing", index.remove(0));
+        assertEquals("Size should match expected value", n / 2, index.size());
+        for (int i = 0; i < n; i++) {
+            Player p = index.get(i * 16);
+            if (i % 2 == 0) {
+                assertNull("Removed player should be gone", p);
+            } else {
+                assertNotNull("Remaining player should be found", p);
+                assertEquals("ID should match", i * 16, p.getID());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import main.AVLPlayerNode;
+import main.Player;
+import main.PlayerIndex;
+import main.PlayerSnapshot;
+import main.ScoreKeeper;
+
+public class PlayerSnapshotTest {
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("players", ".snapshot");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Random random = new Random(16);
+        Player[] players = new Player[5000];
+        for (int i = 0; i < players.length; i++) {
+            // few distinct ELOs, so many ties are ordered by ID
+            players[i] = new Player("Spieler-" + i + "-\u00e9\u00f6", i, 1000 + random.nextInt(200));
+        }
+        AVLPlayerNode tree = ScoreKeeper.getTree(players, true);
+        PlayerSnapshot.write(file, tree);
+
+        PlayerSnapshot snapshot = PlayerSnapshot.load(file);
+        assertEquals("Snapshot should hold every player", players.length, snapshot.size());
+        AVLPlayerNode loaded = snapshot.buildTree();
+        assertEquals("Scoreboard should survive the round trip", tree.scoreboard(), loaded.scoreboard());
+        assertEquals("Loaded tree should be balanced", tree.getHeight(), loaded.getHeight());
+
+        PlayerIndex index = snapshot.buildIndex();
+        for (Player p : players) {
+            Player copy = index.get(p.getID());
+            assertEquals("Name should survive the round trip", p.getName(), copy.getName());
+            assertEquals("ELO should survive the round trip", p.getELO(), copy.getELO(), 0.0);
+            assertEquals("Rank should survive the round trip", tree.getRank(p.getELO()), loaded.getRank(copy.getELO()));
+        }
+    }
+
+    @Test
+    public void testEmptySnapshot() throws IOException {
+        PlayerSnapshot.write(file, new Player[0]);
+        PlayerSnapshot snapshot = PlayerSnapshot.load(file);
+        assertEquals("Empty snapshot should hold no players", 0, snapshot.size());
+        assertNull("Empty snapshot should build no tree", snapshot.buildTree());
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherFiles() throws IOException {
+        Files.write(file, "Alice 1 1200.0\nBob 2 1100.0\n".getBytes());
+        PlayerSnapshot.load(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsUnsortedRecords() throws IOException {
+        PlayerSnapshot.write(file, new Player[] { new Player("Alice", 1, 1200.0), new Player("Bob", 2, 1100.0) });
+        PlayerSnapshot.load(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsTruncatedFile() throws IOException {
+        PlayerSnapshot.write(file, new Player[] { new Player("Bob", 2, 1100.0), new Player("Alice", 1, 1200.0) });
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+        PlayerSnapshot.load(file);
+    }
+
+    @Test
+    public void testFailedWriteKeepsTheOldSnapshot() throws IOException {
+        Player[] old = { new Player("Bob", 2, 1100.0), new Player("Alice", 1, 1200.0) };
+        PlayerSnapshot.write(file, old);
+        byte[] before = Files.readAllBytes(file);
+        char[] longName = new char[70000];
+        Arrays.fill(longName, 'x');
+        Player[] bad = new Player[2000];
+        for (int i = 0; i < bad.length - 1; i++) {
+            bad[i] = new Player("P" + i, bad.length - i, 1000 + i);
+        }
+        bad[bad.length - 1] = new Player(new String(longName), 0, 5000);
+        try {
+            PlayerSnapshot.write(file, bad);
+            fail("A name too long for the format should fail the write");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertArrayEquals("A failed write should leave the old snapshot as it was", before, Files.readAllBytes(file));
+        assertEquals("The old snapshot should still load", 2, PlayerSnapshot.load(file).size());
+        assertFalse("A failed write should clean up after itself",
+                Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+    }
+
+    @Test
+    public void testRejectsACountTheFileCannotHold() throws IOException {
+        PlayerSnapshot.write(file, new Player[] { new Player("Bob", 2, 1100.0), new Player("Alice", 1, 1200.0) });
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).putInt(8, Integer.MAX_VALUE);
+        Files.write(file, bytes);
+        try {
+            PlayerSnapshot.load(file);
+            fail("A count larger than the file should be rejected before anything is allocated");
+        } catch (IOException e) {
+            assertTrue("The error should name the count", e.getMessage().contains("" + Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void testScoreKeeperRejectsTooSmallSnapshots() throws Exception {
+        PlayerSnapshot.write(file, new Player[0]);
+        try {
+            ScoreKeeper.main(new String[] { file.toString() });
+            fail("An empty snapshot should not be run");
+        } catch (IOException e) {
+            assertTrue("The error should say why: " + e.getMessage(), e.getMessage().contains("at least 3 players"));
+        }
+        PlayerSnapshot.write(file, new Player[] { new Player("Bob", 2, 1100.0), new Player("Alice", 1, 1200.0) });
+        try {
+            ScoreKeeper.main(new String[] { file.toString() });
+            fail("A two-player snapshot should not be run");
+        } catch (IOException e) {
+            assertTrue("The error should give the count: " + e.getMessage(), e.getMessage().contains("not 2"));
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import main.ConcurrentLeaderboard;
+import main.MatchBatch;
+import main.Player;
+import main.RankChange;
+import main.RankFeed;
+import main.ScoreKeeper;
+
+public class RankFeedTest {
+
+    /**
+     * A subscriber that requests a fixed number of events up front, if any, and keeps
+     * whatever it is sent.
+     */
+    private static final class Recorder implements Flow.Subscriber<RankChange> {
+        final List<RankChange> changes = new ArrayList<>();
+        final long initialDemand;
+        Flow.Subscription subscription;
+        Throwable error;
+        boolean completed;
+
+        Recorder(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialDemand > 0) {
+                subscription.request(initialDemand);
+            }
+        }
+
+        public void onNext(RankChange change) {
+            changes.add(change);
+        }
+
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    private static List<Integer> board(ConcurrentLeaderboard board) {
+        List<Integer> ids = new ArrayList<>();
+        for (int k = 1; k <= board.size(); k++) {
+            ids.add(board.selectByRank(k).getID());
+        }
+        return ids;
+    }
+
+    /**
+     * Applies a change to a client's copy of the board, checking that the
+     * range it claims to shift is the one that moves.
+     */
+    private static void apply(List<Integer> ids, RankChange change) {
+        int size = ids.size();
+        if (change.getOldRank() != 0) {
+            assertEquals("The event should name the player at its old rank", change.getPlayerId(),
+                    (int) ids.remove(change.getOldRank() - 1));
+        }
+        if (change.getNewRank() != 0) {
+            ids.add(change.getNewRank() - 1, change.getPlayerId());
+        }
+        int shifted = Math.max(0, change.getShiftTo() - change.getShiftFrom() + 1);
+        int moved = (change.getOldRank() == 0 || change.getNewRank() == 0)
+                ? size - Math.max(change.getOldRank(), change.getNewRank()) + (change.getOldRank() == 0 ? 1 : 0)
+                : Math.abs(change.getNewRank() - change.getOldRank());
+        assertEquals("The shifted range should cover the players passed over: " + change, moved, shifted);
+    }
+
+    @Test
+    public void testEventsReplayToTheBoard() {
+        Random random = new Random(25);
+        Player[] players = new Player[200];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new Player("P" + i, i, 1000 + random.nextInt(400));
+        }
+        RankFeed feed = new RankFeed(Runnable::run, 1 << 20);
+        ConcurrentLeaderboard board = new ConcurrentLeaderboard(ScoreKeeper.getTree(players, true),
+                ScoreKeeper.getIndex(players), feed);
+        List<Integer> replica = board(board);
+        Recorder all = new Recorder(Long.MAX_VALUE);
+        Recorder top = new Recorder(Long.MAX_VALUE);
+        feed.subscribe(all);
+        feed.topK(10).subscribe(top);
+
+        int nextId = players.length;
+        for (int round = 0; round < 50; round++) {
+            MatchBatch batch = new MatchBatch();
+            for (int i = 0; i < 20; i++) {
+                batch.add(random.nextInt(nextId), random.nextInt(nextId), random.nextInt(3));
+            }
+            board.applyBatch(batch);
+            board.addPlayer(new Player("N" + nextId, nextId, 1000 + random.nextInt(400)));
+            nextId++;
+            board.removePlayer(random.nextInt(nextId));
+        }
+        feed.close();
+        assertTrue("Closing the feed should complete the subscribers", all.completed && top.completed);
+        for (RankChange change : all.changes) {
+            apply(replica, change);
+        }
+        assertEquals("Replaying the events should give the final board", board(board), replica);
+        assertFalse("The matches should have moved players", all.changes.isEmpty());
+        for (RankChange change : top.changes) {
+            assertTrue("The top-10 feed should only carry top-10 changes", change.touchesTop(10));
+        }
+        long topChanges = all.changes.stream().filter(c -> c.touchesTop(10)).count();
+        assertEquals("The top-10 feed should carry every top-10 change", topChanges, top.changes.size());
+        assertTrue("The top-10 feed should leave out the rest", top.changes.size() < all.changes.size());
+    }
+
+    @Test
+    public void testSlowSubscriberIsCutOff() {
+        RankFeed feed = new RankFeed(Runnable::run, 4);
+        Recorder slow = new Recorder(1);
+        feed.subscribe(slow);
+        for (int i = 0; i < 5; i++) {
+            feed.publish(new RankChange(i, 3, 1, 10));
+        }
+        assertEquals("Requested events should be delivered", 1, slow.changes.size());
+        assertNull("Buffered events should wait for demand", slow.error);
+        slow.subscription.request(2);
+        assertEquals("More demand should drain the buffer", 3, slow.changes.size());
+        feed.publish(new RankChange(5, 3, 1, 10));
+        feed.publish(new RankChange(6, 3, 1, 10));
+        assertNull("A full buffer should not fail", slow.error);
+        feed.publish(new RankChange(7, 3, 1, 10));
+        assertTrue("Overflowing the buffer should cut the subscriber off",
+                slow.error instanceof IllegalStateException);
+        assertFalse("A cut-off subscriber should be dropped", feed.hasSubscribers());
+    }
+
+    @Test
+    public void testCompletionAndBadRequests() {
+        RankFeed feed = new RankFeed(Runnable::run, 8);
+        Recorder recorder = new Recorder(0);
+        feed.subscribe(recorder);
+        feed.publish(new RankChange(1, 0, 1, 0));
+        feed.close();
+        assertFalse("Completion should wait for buffered events", recorder.completed);
+        recorder.subscription.request(5);
+        assertEquals("The buffered event should be delivered", 1, recorder.changes.size());
+        assertTrue("The subscriber should then complete", recorder.completed);
+
+        Recorder bad = new Recorder(0);
+        feed.subscribe(bad);
+        bad.subscription.request(0);
+        assertTrue("A non-positive request should fail the subscription",
+                bad.error instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void testShiftRanges() {
+        RankChange up = new RankChange(7, 9, 3, 20);
+        assertEquals("Players from the new rank should drop", 3, up.getShiftFrom());
+        assertEquals("Players up to the old rank should drop", 8, up.getShiftTo());
+        assertEquals("Passed players should drop a rank", 1, up.getShift());
+        RankChange down = new RankChange(7, 3, 9, 20);
+        assertEquals("Players below the old rank should rise", 4, down.getShiftFrom());
+        assertEquals("Players down to the new rank should rise", 9, down.getShiftTo());
+        assertEquals("Passed players should rise a rank", -1, down.getShift());
+        RankChange left = new RankChange(7, 18, 0, 20);
+        assertEquals("Everyone below a leaver should rise", 19, left.getShiftFrom());
+        assertEquals("Everyone below a leaver should rise", 20, left.getShiftTo());
+        assertTrue("A move to rank 3 touches the top 5", up.touchesTop(5));
+        assertFalse("A move among ranks 18 to 20 does not touch the top 5", left.touchesTop(5));
+    }
+
+    @Test
+    public void testCancelInOnSubscribeLeavesNoFeed() {
+        RankFeed feed = new RankFeed(Runnable::run, 8);
+        AtomicInteger signals = new AtomicInteger();
+        Flow.Subscriber<RankChange> quitter = new Flow.Subscriber<RankChange>() {
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.cancel();
+            }
+
+            public void onNext(RankChange change) {
+                signals.incrementAndGet();
+            }
+
+            public void onError(Throwable throwable) {
+                signals.incrementAndGet();
+            }
+
+            public void onComplete() {
+                signals.incrementAndGet();
+            }
+        };
+        feed.subscribe(quitter);
+        feed.topK(3).subscribe(quitter);
+        assertFalse("A feed cancelled in onSubscribe should not stay listed", feed.hasSubscribers());
+        feed.publish(new RankChange(1, 2, 1, 5));
+        feed.close();
+        assertEquals("A cancelled subscriber should get nothing", 0, signals.get());
+    }
+
+    @Test
+    public void testSubscribeStartsFromTheBoardWhileWriting() throws Exception {
+        Random random = new Random(26);
+        int n = 300;
+        Player[] players = new Player[n];
+        for (int i = 0; i < n; i++) {
+            players[i] = new Player("P" + i, i, 1000 + random.nextInt(400));
+        }
+        RankFeed feed = new RankFeed(Runnable::run, 1 << 20);
+        ConcurrentLeaderboard board = new ConcurrentLeaderboard(ScoreKeeper.getTree(players, true),
+                ScoreKeeper.getIndex(players), feed);
+        AtomicInteger rounds = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            Random moves = new Random(27);
+            for (int round = 0; round < 3000; round++) {
+                board.recordMatch(moves.nextInt(n), moves.nextInt(n), moves.nextInt(3));
+                board.addPlayer(new Player("X", n + (round % 10), 1000 + moves.nextInt(400)));
+                board.removePlayer(n + moves.nextInt(10));
+                rounds.incrementAndGet();
+            }
+        });
+        writer.start();
+        while (rounds.get() < 100 && writer.isAlive()) {
+            Thread.yield();
+        }
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        int[] start = board.subscribe(recorder);
+        writer.join();
+
+        List<Integer> replica = new ArrayList<>();
+        for (int id : start) {
+            replica.add(id);
+        }
+        assertEquals("The starting order should hold the whole board", start.length, replica.size());
+        for (RankChange change : recorder.changes) {
+            apply(replica, change);
+        }
+        assertEquals("The changes after subscribing should turn the starting order into the final board",
+                board(board), replica);
+    }
+}
@@ -0,0 +1,131 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import main.AVLPlayerNode;
+import main.Player;
+import main.PlayerSnapshot;
+import main.RosterImport;
+import main.ScoreKeeper;
+
+public class RosterImportTest {
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("roster", ".csv");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testParsesRows() throws IOException {
+        Files.write(file, ("name,id,elo\r\n" + "Alice,1,1200\r\n" + "  Bob , 2 , 1100.5 \n" + "\n"
+                + "Carol,3,-12.25\n" + "Dan,4,1.5e3").getBytes(StandardCharsets.UTF_8));
+        RosterImport roster = RosterImport.read(file);
+        assertEquals("Every row should be imported", 4, roster.size());
+        assertEquals("No row should be rejected", 0, roster.getRejected());
+        Player bob = roster.getIndex().get(2);
+        assertEquals("Name should be trimmed", "Bob", bob.getName());
+        assertEquals("ELO should be parsed", 1100.5, bob.getELO(), 0.0);
+        assertEquals("Negative ELO should be parsed", -12.25, roster.getIndex().get(3).getELO(), 0.0);
+        assertEquals("Exponent should be parsed", 1500.0, roster.getIndex().get(4).getELO(), 0.0);
+        AVLPlayerNode tree = roster.buildTree();
+        assertEquals("Tree should rank the players", 1, tree.getRank(1500.0));
+    }
+
+    @Test
+    public void testRejectsMalformedRows() throws IOException {
+        Files.write(file, ("Alice,1,1200\n" + "Bob,2\n" + "Carol,x,1300\n" + "Dan,4,abc\n" + "Eve,5,NaN\n"
+                + "Fay,6,1,2\n" + ",7,1000\n" + "Gus,1,900\n" + "Hal,99999999999,1000\n" + "Ian,8,1000\n"
+                + "Jo,9,1000\n").getBytes(StandardCharsets.UTF_8));
+        RosterImport roster = RosterImport.read(file);
+        assertEquals("Good rows should be imported", 3, roster.size());
+        assertEquals("Bad rows should be rejected", 8, roster.getRejected());
+        assertEquals("Rejections should name the line", "line 2: expected name,id,elo", roster.getRejections().get(0));
+        assertEquals("Rejections should name the line", "line 3: bad id", roster.getRejections().get(1));
+        assertTrue("Duplicate IDs should be reported with their line",
+                roster.getRejections().contains("line 8: duplicate id 1 for Gus"));
+        assertEquals("First player with an ID should be kept", "Alice", roster.getIndex().get(1).getName());
+    }
+
+    @Test
+    public void testParsesDoublesExactly() throws IOException {
+        Random random = new Random(18);
+        int n = 500000;
+        double[] elos = new double[n];
+        // large enough to be split into more than one chunk
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < n; i++) {
+                elos[i] = (random.nextInt(4) == 0) ? random.nextDouble() * 3000 : random.nextInt(300000) / 100.0;
+                out.write("player" + i + "," + i + "," + elos[i] + "\n");
+            }
+            out.write("again,0,1000\n");
+        }
+        assertTrue("File should span more than one chunk", Files.size(file) > 8 << 20);
+        RosterImport roster = RosterImport.read(file);
+        assertEquals("Every row should be imported", n, roster.size());
+        assertEquals("A duplicate in a later chunk should name its file line",
+                "line " + (n + 1) + ": duplicate id 0 for again", roster.getRejections().get(0));
+        for (int i = 0; i < n; i++) {
+            Player p = roster.getIndex().get(i);
+            assertEquals("Name should match row", "player" + i, p.getName());
+            assertEquals("ELO should match Double.toString exactly", elos[i], p.getELO(), 0.0);
+        }
+        assertTrue("Throughput should be reported", roster.getMegabytesPerSecond() > 0);
+    }
+
+    @Test
+    public void testImportsSnapshot() throws IOException {
+        Player[] players = { new Player("Alice", 1, 1200.0), new Player("Bob", 2, 1100.0),
+                new Player("Carol", 3, 1300.0) };
+        AVLPlayerNode tree = ScoreKeeper.getTree(players, true);
+        PlayerSnapshot.write(file, tree);
+        RosterImport roster = RosterImport.read(file);
+        assertEquals("Snapshot players should be imported", 3, roster.size());
+        assertEquals("Scoreboard should match", tree.scoreboard(), roster.buildTree().scoreboard());
+    }
+
+    @Test
+    public void testOnlyTheExactHeaderIsSkipped() throws IOException {
+        Files.write(file, ("Namik,1,1200\n" + "Bob,2,1100\n" + "Carol,3,1000\n").getBytes(StandardCharsets.UTF_8));
+        RosterImport roster = RosterImport.read(file);
+        assertEquals("A first player named like the header should be imported", 3, roster.size());
+        assertEquals("A first player named like the header should be kept", "Namik",
+                roster.getIndex().get(1).getName());
+
+        Files.write(file, (" NAME , Id ,ELO\n" + "Ann,1,1200\n" + "Bob,2,1100\n" + "Cy,3,1000\n")
+                .getBytes(StandardCharsets.UTF_8));
+        roster = RosterImport.read(file);
+        assertEquals("The header should be skipped in any case", 3, roster.size());
+        assertEquals("The header should not be rejected", 0, roster.getRejected());
+    }
+
+    @Test
+    public void testTooFewPlayersFailsTheImport() throws IOException {
+        Files.write(file, ("name,id,elo\n" + "Ann,1,1200\n" + "Bob,1,1100\n" + "Cy,x,1000\n")
+                .getBytes(StandardCharsets.UTF_8));
+        try {
+            RosterImport.read(file);
+            fail("A roster with fewer than 3 valid players should not import");
+        } catch (IOException e) {
+            assertTrue("The failure should give the rule: " + e.getMessage(),
+                    e.getMessage().contains("at least 3 valid players"));
+        }
+    }
+
+}
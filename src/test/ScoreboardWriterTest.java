@@ -0,0 +1,63 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+import main.Player;
+import main.ScoreboardWriter;
+
+public class ScoreboardWriterTest {
+
+    private static void assertRowMatches(double score) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        ScoreboardWriter writer = new ScoreboardWriter(sb);
+        writer.writeRow(new Player("p", 1, score));
+        writer.flush();
+        assertEquals("Row should match String.format for " + score,
+                String.format("%-10s %-3d %.2f\n", "p", 1, score), sb.toString());
+    }
+
+    @Test
+    public void testRandomScoresMatchFormat() throws Exception {
+        Random random = new Random(9);
+        for (int i = 0; i < 200_000; i++) {
+            // spread the magnitudes from below one to past the fast path limit
+            double magnitude = Math.pow(10, random.nextInt(13) - 2);
+            double score = (random.nextDouble() - 0.5) * 2 * magnitude;
+            assertRowMatches(score);
+            // scores written with three decimals ending in 5 sit on a half
+            double half = Math.rint(score * 100) / 100 + 0.005;
+            assertRowMatches(half);
+            assertRowMatches(Math.nextUp(half));
+            assertRowMatches(Math.nextDown(half));
+        }
+    }
+
+    @Test
+    public void testFormatFollowsDefaultLocale() throws Exception {
+        Locale saved = Locale.getDefault();
+        try {
+            for (Locale locale : new Locale[] { Locale.GERMANY, Locale.FRANCE,
+                    Locale.forLanguageTag("th-TH-u-nu-thai") }) {
+                Locale.setDefault(locale);
+                assertRowMatches(1200);
+                assertRowMatches(-3.14159);
+                assertRowMatches(2.675);
+                assertRowMatches(123456789.125);
+                assertRowMatches(Double.NaN);
+            }
+            Locale.setDefault(Locale.GERMANY);
+            StringBuilder sb = new StringBuilder();
+            ScoreboardWriter writer = new ScoreboardWriter(sb);
+            writer.writeRow(new Player("p", 1, 1200));
+            writer.flush();
+            assertTrue("A German install should keep its decimal comma", sb.toString().endsWith("1200,00\n"));
+        } finally {
+            Locale.setDefault(saved);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import main.AVLPlayerNode;
+import main.Leaderboard;
+import main.Player;
+import main.SkipListLeaderboard;
+
+public class SkipListLeaderboardTest {
+    private SkipListLeaderboard board;
+    private Player alice, bob, carol, dan;
+
+    @Before
+    public void setUp() {
+        alice = new Player("Alice", 1, 1200.0);
+        bob = new Player("Bob", 2, 1100.0);
+        carol = new Player("Carol", 3, 1300.0);
+        dan = new Player("Dan", 4, 1500.0);
+
+        board = new SkipListLeaderboard();
+        board.insert(alice, alice.getELO()).insert(bob, bob.getELO()).insert(carol, carol.getELO());
+    }
+
+    @Test
+    public void testMatchesAVLPlayerNode() {
+        Leaderboard tree = new AVLPlayerNode(alice, alice.getELO());
+        tree = tree.insert(bob, bob.getELO()).insert(carol, carol.getELO()).insert(dan, dan.getELO());
+        board.insert(dan, dan.getELO());
+
+        assertEquals("Scoreboard should match AVLPlayerNode", tree.scoreboard(), board.scoreboard());
+        for (Player p : new Player[] { alice, bob, carol, dan }) {
+            assertEquals("Rank should match AVLPlayerNode", tree.getRank(p.getELO()), board.getRank(p.getELO()));
+        }
+        assertSame("Rank 2 should match expected player", carol, board.selectByRank(2));
+        assertNull("Rank past the end should be out of range", board.selectByRank(5));
+    }
+
+    @Test
+    public void testDelete() {
+        board.delete(alice.getELO());
+        assertNull("Alice should be gone", board.getPlayer(alice.getELO()));
+        assertEquals("Rank should reflect the deletion", 2, board.getRank(bob.getELO()));
+        assertEquals("Size should match expected value", 2, board.size());
+    }
+
+    @Test
+    public void testDeleteSharedScore() {
+        Player twin = new Player("Twin", 5, alice.getELO());
+        board.insert(twin, twin.getELO());
+        assertSame("Lower ID should come first among equals", alice, board.selectByRank(2));
+        assertSame("Higher ID should come next among equals", twin, board.selectByRank(3));
+        assertTrue("Delete should find Alice", board.delete(alice, alice.getELO()));
+        assertSame("Twin should keep the shared score", twin, board.getPlayer(alice.getELO()));
+        assertFalse("Deleting twice should find nothing", board.delete(alice, alice.getELO()));
+    }
+
+    @Test
+    public void testLargeRanks() {
+        board = new SkipListLeaderboard();
+        for (int i = 0; i < 10000; i++) {
+            board.insert(new Player("P" + i, i, i), i);
+        }
+        for (int i = 0; i < 10000; i += 2) {
+            board.delete(i);
+        }
+        assertEquals("Size should match expected value", 5000, board.size());
+        assertEquals("Rank should match expected value", 1, board.getRank(9999));
+        assertEquals("Rank should match expected value", 5000, board.getRank(1));
+        assertEquals("Select should invert rank", 9001, board.selectByRank(500).getID());
+    }
+
+    @Test
+    public void testConcurrentWritersKeepSpansExact() throws Exception {
+        board = new SkipListLeaderboard();
+        int perWriter = 3000;
+        Thread[] writers = new Thread[4];
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<List<Player>> kept = new ArrayList<>();
+        for (int t = 0; t < writers.length; t++) {
+            List<Player> mine = new ArrayList<>();
+            kept.add(mine);
+            int first = t * perWriter;
+            writers[t] = new Thread(() -> {
+                Player previous = null;
+                for (int id = first; id < first + perWriter; id++) {
+                    Player p = new Player("P" + id, id, id % 500);
+                    board.insert(p, p.getELO());
+                    // delete every third player once the next one is in, so inserts and deletes interleave
+                    if (previous != null && previous.getID() % 3 == 0) {
+                        if (!board.delete(previous, previous.getELO())) {
+                            failure.compareAndSet(null, new AssertionError("Delete lost player " + previous.getID()));
+                        }
+                    } else if (previous != null) {
+                        mine.add(previous);
+                    }
+                    previous = p;
+                }
+                mine.add(previous);
+            });
+        }
+        Thread reader = new Thread(() -> {
+            // scores are written in the default locale
+            NumberFormat format = NumberFormat.getInstance();
+            try {
+                int limit = writers.length * perWriter;
+                for (int round = 0; round < 2000; round++) {
+                    int rank = board.getRank(round % 500);
+                    assertTrue("A rank should be on the board: " + rank, rank >= 0 && rank <= limit);
+                    String[] rows = board.scoreboard(round % 100, 20).split("\n");
+                    double last = Double.POSITIVE_INFINITY;
+                    for (int i = 1; i < rows.length; i++) {
+                        double score = format.parse(rows[i].substring(rows[i].lastIndexOf(' ') + 1)).doubleValue();
+                        assertTrue("A page should be in order", score <= last);
+                        last = score;
+                    }
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+        reader.start();
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        reader.join();
+        if (failure.get() != null) {
+            throw new AssertionError("A writer or the reader saw an inconsistent board", failure.get());
+        }
+
+        List<Player> expected = new ArrayList<>();
+        kept.forEach(expected::addAll);
+        expected.sort(Comparator.comparingDouble(Player::getELO).reversed().thenComparingInt(Player::getID));
+        assertTrue("Every span should match the players it jumps over", board.spansAreExact());
+        assertEquals("Size should count the players left", expected.size(), board.size());
+        for (int k = 1; k <= expected.size(); k++) {
+            Player p = expected.get(k - 1);
+            assertSame("Select should find the expected player at rank " + k, p, board.selectByRank(k));
+            if (k == 1 || expected.get(k - 2).getELO() != p.getELO()) {
+                assertEquals("Rank should be the first rank with the score", k, board.getRank(p.getELO()));
+            }
+        }
+        assertNull("Rank past the end should be out of range", board.selectByRank(expected.size() + 1));
+    }
+
+}
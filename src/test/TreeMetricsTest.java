@@ -0,0 +1,153 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import main.AVLPlayerNode;
+import main.ConcurrentLeaderboard;
+import main.LatencyHistogram;
+import main.MatchmakingQueue;
+import main.Player;
+import main.TreeMetrics;
+
+public class TreeMetricsTest {
+    private final TreeMetrics metrics = TreeMetrics.getInstance();
+
+    @Before
+    public void setUp() {
+        metrics.reset();
+        TreeMetrics.enable(true);
+    }
+
+    @After
+    public void tearDown() {
+        TreeMetrics.enable(false);
+        metrics.reset();
+    }
+
+    private static AVLPlayerNode insertAll(double... elos) {
+        AVLPlayerNode tree = null;
+        for (int i = 0; i < elos.length; i++) {
+            Player p = new Player("p" + i, i, elos[i]);
+            tree = (tree == null) ? new AVLPlayerNode(p, elos[i]) : tree.insert(p, elos[i]);
+        }
+        return tree;
+    }
+
+    @Test
+    public void testCountsRotationsByCase() {
+        insertAll(1, 2, 3);
+        assertEquals("Ascending inserts should rotate right-right", 1, metrics.getRightRightRotations());
+        insertAll(3, 2, 1);
+        assertEquals("Descending inserts should rotate left-left", 1, metrics.getLeftLeftRotations());
+        insertAll(1, 3, 2);
+        assertEquals("A zig-zag to the right should rotate right-left", 1, metrics.getRightLeftRotations());
+        insertAll(3, 1, 2);
+        assertEquals("A zig-zag to the left should rotate left-right", 1, metrics.getLeftRightRotations());
+        assertEquals("No other rotations should be counted", 1, metrics.getRightRightRotations());
+    }
+
+    @Test
+    public void testRecordsPathsShapeAndLatencies() {
+        int n = 1 << 12;
+        double[] elos = new double[n];
+        for (int i = 0; i < n; i++) {
+            elos[i] = i;
+        }
+        AVLPlayerNode tree = insertAll(elos);
+        tree.recordShape();
+        assertEquals("Every insert but the first should descend", n - 1, metrics.getDescents());
+        assertEquals("Every insert but the first should be timed", n - 1, TreeMetrics.INSERT.getCount());
+        assertTrue("No descent should be longer than the tree is tall",
+                metrics.getMaxPathLength() <= tree.getHeight() + 1);
+        assertEquals("Shape should track the size", n, metrics.getSize());
+        assertEquals("Shape should track the height", tree.getHeight(), metrics.getHeight());
+        assertTrue("An AVL tree should stay within 1.44 log2(n)", metrics.getMaxHeightRatio() <= 1.45);
+        assertTrue("No tree is shorter than a perfect one", metrics.getHeightRatio() >= 1.0);
+
+        tree.getRank(7);
+        tree.getPlayer(7);
+        tree.scoreboard();
+        tree.scoreboard(0, 10);
+        tree = tree.delete(7);
+        tree.recordShape();
+        assertEquals("getRank should be timed", 1, TreeMetrics.GET_RANK.getCount());
+        assertEquals("getPlayer should be timed", 1, TreeMetrics.GET_PLAYER.getCount());
+        assertEquals("Both scoreboards should be timed", 2, TreeMetrics.SCOREBOARD.getCount());
+        assertEquals("delete should be timed", 1, TreeMetrics.DELETE.getCount());
+        assertEquals("Shape should follow the delete", n - 1, metrics.getSize());
+        assertTrue("The dump should list the rotations", metrics.dump().startsWith("rotations: "));
+    }
+
+    @Test
+    public void testDisabledRecordsNothing() {
+        TreeMetrics.enable(false);
+        AVLPlayerNode tree = insertAll(1, 2, 3, 4, 5);
+        tree.getRank(3);
+        tree.delete(3).recordShape();
+        assertEquals("No rotations should be counted", 0, metrics.getRightRightRotations());
+        assertEquals("No descents should be counted", 0, metrics.getDescents());
+        assertEquals("No latencies should be recorded", 0, TreeMetrics.INSERT.getCount());
+        assertEquals("No shape should be recorded", 0, metrics.getSize());
+    }
+
+    @Test
+    public void testOnlyTheLeaderboardRecordsItsShape() {
+        Player[] players = new Player[100];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new Player("p" + i, i, 1000 + i);
+        }
+        ConcurrentLeaderboard board = new ConcurrentLeaderboard(players);
+        board.addPlayer(new Player("new", 100, 1050.5));
+        assertEquals("The leaderboard should record its shape", 101, metrics.getSize());
+        int height = metrics.getHeight();
+
+        MatchmakingQueue queue = new MatchmakingQueue(0, 0, 0);
+        for (int i = 0; i < 10; i++) {
+            queue.join(new Player("q" + i, 200 + i, 100 * i));
+        }
+        insertAll(1, 2, 3, 4, 5);
+        assertEquals("Other trees should not replace the leaderboard's size", 101, metrics.getSize());
+        assertEquals("Other trees should not replace the leaderboard's height", height, metrics.getHeight());
+        board.removePlayer(100);
+        assertEquals("The leaderboard's shape should follow its deletes", 100, metrics.getSize());
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        assertEquals("An empty histogram has no percentiles", 0, histogram.getP99Nanos());
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100);
+        }
+        histogram.record(5000);
+        assertEquals("Count should include every latency", 100, histogram.getCount());
+        assertEquals("Median should be the upper bound of its bucket", 127, histogram.getP50Nanos());
+        assertEquals("p99 should still fall in the low bucket", 127, histogram.getP99Nanos());
+        assertEquals("p99.9 should be capped at the maximum", 5000, histogram.getP999Nanos());
+        assertEquals("Mean should be exact", 149.0, histogram.getMeanNanos(), 1e-9);
+        histogram.record(0);
+        assertEquals("Zero should be recordable", 101, histogram.getCount());
+    }
+
+    @Test
+    public void testMBeans() throws JMException {
+        TreeMetrics.register();
+        TreeMetrics.register();
+        insertAll(1, 2, 3);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals("Rotations should be visible over JMX", 1L,
+                server.getAttribute(new ObjectName("main:type=TreeMetrics"), "RightRightRotations"));
+        assertEquals("Latencies should be visible over JMX", 2L,
+                server.getAttribute(new ObjectName("main:type=LatencyHistogram,name=insert"), "Count"));
+    }
+}